@@ -0,0 +1,21 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Use the JDK in JAVA_HOME (11 or later), or the one on the PATH; mvn honours it too
+if [ -n "$JAVA_HOME" ]; then
+  export PATH=$JAVA_HOME/bin:$PATH
+fi
+
+# build the library, the program and the JMH benchmarks jar
+mvn -B -q -f $DIR/../../pom.xml -DskipTests package || exit 1
+JAR=$DIR/../target/benchmarks.jar
+DB="-p dbName=$DB_NAME -p port=$PGPORT -p user=$USER"
+
+#run the benchmarks
+#Use the database name, port number and login of a database set aside for benchmarking
+#(the imports truncate its tables); optional: more JMH options, e.g. a benchmark regex
+#The imports run first, they leave the data the queries run on; results are written
+#in JMH's JSON format to $DIR/../import-results.json and $DIR/../bench-results.json
+java -Dprofnetwork.dataDir="$DIR/../../../data" -jar $JAR ImportBenchmark $DB \
+  -rf json -rff $DIR/../import-results.json || exit 1
+java -Dprofnetwork.dataDir="$DIR/../../../data" -jar $JAR ProfNetworkBenchmark $DB \
+  -rf json -rff $DIR/../bench-results.json "$@"
@@ -0,0 +1,16 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Use the JDK in JAVA_HOME (11 or later, 21 or later for virtual threads), or the one on the PATH
+if [ -n "$JAVA_HOME" ]; then
+  export PATH=$JAVA_HOME/bin:$PATH
+fi
+
+# build the library, the program and the benchmarks jar, which holds the load test
+mvn -B -q -f $DIR/../../pom.xml -DskipTests package || exit 1
+
+#run the load test against a database loaded with the bundled data (it sends real requests and messages)
+#usage: load_test.sh [workers] [ops per second] [seconds]
+java -cp $DIR/../target/benchmarks.jar -Dprofnetwork.dataDir="$DIR/../../../data" \
+  -Dprofnetwork.load.workers=${1:-50} -Dprofnetwork.load.rate=${2:-200} -Dprofnetwork.load.durationS=${3:-60} \
+  -Dprofnetwork.pool.maxSize=${POOL_SIZE:-16} \
+  LoadTest $DB_NAME $PGPORT $USER
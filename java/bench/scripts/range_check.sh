@@ -0,0 +1,15 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Use the JDK in JAVA_HOME (11 or later), or the one on the PATH; mvn honours it too
+if [ -n "$JAVA_HOME" ]; then
+  export PATH=$JAVA_HOME/bin:$PATH
+fi
+
+# build the library, the program and the JMH benchmarks jar
+mvn -B -q -f $DIR/../../pom.xml -DskipTests package || exit 1
+
+#run the benchmark against a database loaded with the bundled data
+#Use your database name, port number and login; optional: more JMH options,
+#e.g. -p pairs=200 -p levels=3 -p mode=sql,memory
+java -Dprofnetwork.dataDir="$DIR/../../../data" -jar $DIR/../target/benchmarks.jar RangeCheckBenchmark \
+  -p dbName=$DB_NAME -p port=$PGPORT -p user=$USER "$@"
@@ -0,0 +1,413 @@
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import profnetwork.CsvReader;
+import profnetwork.LatencyHistogram;
+import profnetwork.Metrics;
+import profnetwork.Server;
+
+/**
+ * Load test of the server mode (see profnetwork.Server): N workers, each a
+ * user from data/USR-Table 1.csv logged in over its own session, drive a
+ * mix of searches, friend requests, request answers, sent messages and inbox
+ * reads at a total target rate.  Every worker keeps a schedule of when its
+ * next operation is due, and latency is measured from that time, not from
+ * when the operation could start, so a slow server is not hidden by workers
+ * that fall behind (coordinated omission).  At the end the throughput and
+ * the latency percentiles of each operation are printed.
+ *
+ * Without profnetwork.load.connect a server is started in this JVM on the
+ * given database.  The requests and messages it sends are real, so use a
+ * database set aside for testing.
+ *
+ * Settings (system properties):
+ *   profnetwork.load.workers    concurrent users (default 50)
+ *   profnetwork.load.rate       operations per second over all workers (default 200)
+ *   profnetwork.load.durationS  length of the measured run (default 60)
+ *   profnetwork.load.warmupS    run before measuring, not reported (default 10)
+ *   profnetwork.load.mix        weights of the operations
+ *                               (default search=30,request=10,accept=10,send=20,read=30);
+ *                               accept answers the oldest pending request, rejecting one in four
+ *   profnetwork.load.connect    host:port of a running server instead of starting one
+ *   profnetwork.load.seed       random seed (default 166)
+ * With -Dprofnetwork.metrics=true the server's per-command and per-statement
+ * latencies (see profnetwork.Metrics) are printed as well.
+ *
+ * usage: java LoadTest <dbname> <port> <user>
+ */
+public class LoadTest
+{
+  private static final int WORKERS = Integer.getInteger("profnetwork.load.workers", 50);
+  private static final double RATE = Double.parseDouble(System.getProperty("profnetwork.load.rate", "200"));
+  private static final int DURATION_S = Integer.getInteger("profnetwork.load.durationS", 60);
+  private static final int WARMUP_S = Integer.getInteger("profnetwork.load.warmupS", 10);
+  private static final String MIX = System.getProperty("profnetwork.load.mix", "search=30,request=10,accept=10,send=20,read=30");
+  private static final String CONNECT = System.getProperty("profnetwork.load.connect");
+  private static final long SEED = Long.getLong("profnetwork.load.seed", 166L);
+
+  private static final String[] OPERATIONS = { "search", "request", "accept", "send", "read" };
+
+  // latencies and failures of each operation, in the order of OPERATIONS; recording starts after the warmup
+  private static final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+  private static final AtomicLong[] errors = new AtomicLong[OPERATIONS.length];
+  private static final AtomicLong failedLogins = new AtomicLong();
+  private static volatile boolean measuring = false;
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length < 3 && CONNECT == null)
+    {
+      System.err.println("Usage: java LoadTest <dbname> <port> <user>  (or -Dprofnetwork.load.connect=host:port)");
+      return;
+    }
+    for (int i = 0; i < OPERATIONS.length; i++)
+    {
+      latencies[i] = new LatencyHistogram();
+      errors[i] = new AtomicLong();
+    }
+    final int[] weights = parseMix(MIX);
+    final List<String[]> users = readUsers(ProfNetwork.USR_CSV.getCsvFile());
+    if (users.size() < 2)
+    {
+      System.err.println("No users in " + ProfNetwork.USR_CSV.getCsvFile());
+      return;
+    }
+
+    ProfNetwork esql = null;
+    Server server = null;
+    String host;
+    int port;
+    try
+    {
+      if (CONNECT == null)
+      {
+        Class.forName("org.postgresql.Driver");
+        esql = new ProfNetwork(args[0], args[1], args[2], "");
+        esql.loadFriendGraph();
+        esql.loadNameIndex();
+        server = new Server(esql, 0, ProfNetwork.MESSAGE_QUEUE);
+        host = "127.0.0.1";
+        port = server.start();
+      }
+      else
+      {
+        int colon = CONNECT.lastIndexOf(':');
+        host = CONNECT.substring(0, colon);
+        port = Integer.parseInt(CONNECT.substring(colon + 1));
+      }
+
+      System.out.format("%d workers, %.0f ops/s, %ds warmup + %ds, mix %s, server %s:%d%n",
+        WORKERS, RATE, WARMUP_S, DURATION_S, MIX, host, port);
+
+      // every worker runs one operation per interval, staggered so the total rate is even
+      final long intervalNanos = (long) (WORKERS * 1e9 / RATE);
+      final long start = System.nanoTime() + 500000000L;
+      final long measureFrom = start + WARMUP_S * 1000000000L;
+      final long end = measureFrom + DURATION_S * 1000000000L;
+      final CountDownLatch done = new CountDownLatch(WORKERS);
+      final String serverHost = host;
+      final int serverPort = port;
+      for (int w = 0; w < WORKERS; w++)
+      {
+        final int worker = w;
+        Thread thread = new Thread(new Runnable()
+        {
+          public void run()
+          {
+            try
+            {
+              new Worker(serverHost, serverPort, users, weights, new Random(SEED + worker))
+                .run(start + worker * intervalNanos / WORKERS, intervalNanos, end);
+            }
+            catch (Exception e)
+            {
+              System.err.println("worker " + worker + ": " + e.getMessage());
+            }
+            finally
+            {
+              done.countDown();
+            }
+          }
+        }, "load-" + w);
+        thread.setDaemon(true);
+        thread.start();
+      }
+
+      sleepUntil(measureFrom);
+      measuring = true;
+      done.await();
+      long measuredNanos = Math.min(System.nanoTime(), end) - measureFrom;
+      measuring = false;
+
+      report(measuredNanos);
+      if (Metrics.ENABLED)
+      {
+        // the server's own view: its commands and statements, warmup included
+        System.out.print(Metrics.toLog());
+      }
+      if (esql != null)
+      {
+        System.out.println(esql.getStats());
+      }
+      if (server != null)
+      {
+        System.out.println(server.getStats());
+      }
+    }//end try
+    finally
+    {
+      if (server != null)
+      {
+        server.stop();
+      }
+      if (esql != null)
+      {
+        esql.cleanup();
+      }
+    }
+  }//end main
+
+  /*
+  * One simulated user with its own session
+  */
+  private static class Worker
+  {
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private final List<String[]> users;
+    private final int[] weights;
+    private final Random random;
+    private int sent = 0;
+
+    Worker(String host, int port, List<String[]> users, int[] weights, Random random) throws Exception
+    {
+      this.socket = new Socket(host, port);
+      this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      this.users = users;
+      this.weights = weights;
+      this.random = random;
+      call(null);   // the greeting
+    }
+
+    void run(long first, long interval, long end) throws Exception
+    {
+      try
+      {
+        login();
+        for (long due = first; due < end; due += interval)
+        {
+          sleepUntil(due);
+          int op = pick();
+          boolean ok = operation(op);
+          long latency = System.nanoTime() - due;
+          if (measuring)
+          {
+            latencies[op].record(latency);
+            if (!ok)
+            {
+              errors[op].incrementAndGet();
+            }
+          }
+        }
+        call("QUIT");
+      }
+      finally
+      {
+        socket.close();
+      }
+    }//end run
+
+    /*
+    * Log in as random users from the CSV until one is accepted
+    */
+    private void login() throws Exception
+    {
+      for (int attempt = 0; attempt < 20; attempt++)
+      {
+        String[] user = randomUser();
+        if (call("LOGIN\t" + user[0] + "\t" + user[1]) != null)
+        {
+          return;
+        }
+        failedLogins.incrementAndGet();
+      }
+      throw new IllegalStateException("no user of the CSV could log in, import the data first");
+    }
+
+    /*
+    * Run an operation; return false when the server answered ERR
+    */
+    private boolean operation(int op) throws Exception
+    {
+      switch (op)
+      {
+        case 0:   // search for the first name of a random user
+          String name = randomUser()[2];
+          int space = name.indexOf(' ');
+          return call("SEARCH\t" + (space > 0 ? name.substring(0, space) : name)) != null;
+        case 1:
+          return call("REQUEST\t" + randomUser()[0]) != null;
+        case 2:   // answer the oldest request, if any: accept three in four, reject the others
+          List<String> requests = call("REQUESTS");
+          if (requests == null)
+          {
+            return false;
+          }
+          String answer = random.nextInt(4) == 0 ? "REJECT\t" : "ACCEPT\t";
+          return requests.isEmpty() || call(answer + requests.get(0)) != null;
+        case 3:
+          return call("SEND\t" + randomUser()[0] + "\tLoad test message " + (++sent)) != null;
+        default:
+          return call("MESSAGES") != null;
+      }
+    }//end operation
+
+    /*
+    * Send a request (none for the greeting) and read the reply: its result lines, null for ERR
+    */
+    private List<String> call(String request) throws Exception
+    {
+      if (request != null)
+      {
+        out.print(request + "\n");
+        out.flush();
+      }
+      String status = in.readLine();
+      if (status == null)
+      {
+        throw new IllegalStateException("server closed the session");
+      }
+      if (!status.startsWith("OK "))
+      {
+        return null;
+      }
+      int n = Integer.parseInt(status.substring(3).trim());
+      List<String> lines = new ArrayList<String>(n);
+      for (int i = 0; i < n; i++)
+      {
+        String line = in.readLine();
+        int tab = line.indexOf('\t');
+        lines.add(tab < 0 ? line : line.substring(0, tab));
+      }
+      return lines;
+    }//end call
+
+    private int pick()
+    {
+      int r = random.nextInt(weights[weights.length - 1]);
+      int op = 0;
+      while (r >= weights[op])
+      {
+        ++op;
+      }
+      return op;
+    }
+
+    private String[] randomUser()
+    {
+      return users.get(random.nextInt(users.size()));
+    }
+  }//end Worker
+
+  //==============helpers================================================================================
+
+  private static void report(long measuredNanos)
+  {
+    double seconds = measuredNanos / 1e9;
+    LatencyHistogram all = new LatencyHistogram();
+    long allErrors = 0;
+    System.out.format("%n%-10s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+      "operation", "count", "errors", "ops/s", "mean ms", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+    for (int i = 0; i < OPERATIONS.length; i++)
+    {
+      print(OPERATIONS[i], latencies[i], errors[i].get(), seconds);
+      all.add(latencies[i]);
+      allErrors += errors[i].get();
+    }
+    print("all", all, allErrors, seconds);
+    if (failedLogins.get() > 0)
+    {
+      System.out.println(failedLogins.get() + " logins failed");
+    }
+  }
+
+  private static void print(String name, LatencyHistogram h, long errors, double seconds)
+  {
+    System.out.format("%-10s %9d %7d %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+      name, h.getCount(), errors, h.getCount() / seconds, h.getMean() / 1e6, h.getValueAtPercentile(50) / 1e6,
+      h.getValueAtPercentile(99) / 1e6, h.getValueAtPercentile(99.9) / 1e6, h.getMax() / 1e6);
+  }
+
+  /*
+  * Return the cumulative weights of OPERATIONS from e.g. "search=30,read=70"
+  */
+  private static int[] parseMix(String mix)
+  {
+    int[] weights = new int[OPERATIONS.length];
+    for (String part : mix.split(","))
+    {
+      String[] kv = part.trim().split("=");
+      int op = -1;
+      for (int i = 0; i < OPERATIONS.length; i++)
+      {
+        if (OPERATIONS[i].equalsIgnoreCase(kv[0].trim()))
+        {
+          op = i;
+        }
+      }
+      if (op < 0 || kv.length != 2)
+      {
+        throw new IllegalArgumentException("Bad operation mix " + mix + ", the operations are search, request, accept, send and read");
+      }
+      weights[op] = Integer.parseInt(kv[1].trim());
+    }
+    for (int i = 1; i < weights.length; i++)
+    {
+      weights[i] += weights[i - 1];
+    }
+    if (weights[weights.length - 1] <= 0)
+    {
+      throw new IllegalArgumentException("Bad operation mix " + mix + ", no operation has a weight");
+    }
+    return weights;
+  }//end parseMix
+
+  /*
+  * Return the (userId, password, name) rows of the user CSV, header excluded
+  */
+  private static List<String[]> readUsers(String csvFile) throws Exception
+  {
+    List<String[]> users = new ArrayList<String[]>();
+    try (CsvReader csv = new CsvReader(csvFile))
+    {
+      while (csv.next())
+      {
+        if (csv.getRecordNumber() > 1 && csv.getFieldCount() > 3)
+        {
+          users.add(new String[] { csv.getString(0).trim(), csv.getString(1).trim(), csv.getString(3).trim() });
+        }
+      }
+    }
+    return users;
+  }
+
+  private static void sleepUntil(long nanoTime) throws InterruptedException
+  {
+    long wait;
+    while ((wait = nanoTime - System.nanoTime()) > 0)
+    {
+      Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+    }
+  }
+}//end LoadTest
@@ -0,0 +1,88 @@
+package profnetwork.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import profnetwork.CsvReader;
+import profnetwork.Database;
+
+/**
+ * The database the benchmarks run against, one per trial, given with the
+ * JMH parameters -p dbName=... -p port=... -p user=... (see
+ * bench/scripts/bench.sh).  States that need more, e.g. a loaded index,
+ * extend it; JMH runs their setup after open() and their overrides of
+ * close() instead of it.
+ */
+@State(Scope.Benchmark)
+public class BenchDatabase
+{
+  @Param("")
+  public String dbName;
+
+  @Param("5432")
+  public String port;
+
+  @Param("")
+  public String user;
+
+  Database db;
+
+  @Setup(Level.Trial)
+  public void open() throws Exception
+  {
+    if (dbName.isEmpty() || user.isEmpty())
+    {
+      throw new IllegalArgumentException("Give the database with -p dbName=<name> -p port=<port> -p user=<login>");
+    }
+    Class.forName("org.postgresql.Driver");
+    db = new Database(Database.url(dbName, port), user, "");
+  }
+
+  @TearDown(Level.Trial)
+  public void close()
+  {
+    if (db != null)
+    {
+      db.cleanup();
+      db = null;
+    }
+  }
+
+  /*
+  * Pick random (userId, password, name) rows of the user CSV, header excluded
+  */
+  static List<String[]> sampleUsers(String csvFile, int size, long seed) throws Exception
+  {
+    List<String[]> all = new ArrayList<String[]>();
+    try (CsvReader csv = new CsvReader(csvFile))
+    {
+      while (csv.next())
+      {
+        if (csv.getRecordNumber() > 1 && csv.getFieldCount() > 3)
+        {
+          all.add(new String[] { csv.getString(0), csv.getString(1), csv.getString(3) });
+        }
+      }
+    }
+    if (all.isEmpty())
+    {
+      throw new IllegalArgumentException("No users in " + csvFile);
+    }
+
+    Random random = new Random(seed);
+    List<String[]> sample = new ArrayList<String[]>();
+    for (int i = 0; i < size; i++)
+    {
+      sample.add(all.get(random.nextInt(all.size())));
+    }
+    return sample;
+  }//end sampleUsers
+}//end BenchDatabase
@@ -0,0 +1,120 @@
+package profnetwork.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import profnetwork.Database;
+import profnetwork.ImportScheduler;
+
+/**
+ * The CSV imports of the bundled data/ files, each timed once per
+ * iteration into emptied tables: the tables an import loads are truncated
+ * before every iteration, so use a database set aside for benchmarking.
+ * importAll runs first and every run leaves the data ProfNetworkBenchmark
+ * queries.
+ *
+ * usage: java -jar bench/target/benchmarks.jar ImportBenchmark -p dbName=... -p port=... -p user=...
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImportBenchmark
+{
+  // what importAll loads; the message import is left out, as in the client
+  private static final ImportScheduler.Table[] ALL = {
+    Database.USR_CSV, Database.CONNECTION_CSV, Database.WORK_EXPR_CSV, Database.EDUCATIONAL_DETAILS_CSV };
+
+  /**
+   * The database, with the tables of the running import emptied before each iteration
+   */
+  @State(Scope.Benchmark)
+  public static class Tables extends BenchDatabase
+  {
+    @Setup(Level.Iteration)
+    public void truncate(BenchmarkParams params) throws Exception
+    {
+      for (ImportScheduler.Table table : tables(params.getBenchmark()))
+      {
+        if (!new File(table.getCsvFile()).isFile())
+        {
+          throw new IllegalStateException("No " + table.getCsvFile());
+        }
+        db.executeUpdate("TRUNCATE TABLE " + table.getName());
+      }
+    }
+  }//end Tables
+
+  /*
+  * Return the tables a benchmark, named by its method, imports
+  */
+  private static ImportScheduler.Table[] tables(String benchmark)
+  {
+    String name = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+    switch (name)
+    {
+      case "importUsr": return new ImportScheduler.Table[] { Database.USR_CSV };
+      case "importConnection": return new ImportScheduler.Table[] { Database.CONNECTION_CSV };
+      case "importWorkExperience": return new ImportScheduler.Table[] { Database.WORK_EXPR_CSV };
+      case "importEducationDetails": return new ImportScheduler.Table[] { Database.EDUCATIONAL_DETAILS_CSV };
+      case "importMessage": return new ImportScheduler.Table[] { Database.MESSAGE_CSV };
+      case "importAll": return ALL;
+      default: throw new IllegalArgumentException("Unknown import benchmark " + benchmark);
+    }
+  }
+
+  private static void run(Tables tables, String benchmark) throws Exception
+  {
+    tables.db.importTables(tables(benchmark));
+  }
+
+  @Benchmark
+  public void importAll(Tables tables) throws Exception
+  {
+    run(tables, "importAll");
+  }
+
+  @Benchmark
+  public void importUsr(Tables tables) throws Exception
+  {
+    run(tables, "importUsr");
+  }
+
+  @Benchmark
+  public void importConnection(Tables tables) throws Exception
+  {
+    run(tables, "importConnection");
+  }
+
+  @Benchmark
+  public void importWorkExperience(Tables tables) throws Exception
+  {
+    run(tables, "importWorkExperience");
+  }
+
+  @Benchmark
+  public void importEducationDetails(Tables tables) throws Exception
+  {
+    run(tables, "importEducationDetails");
+  }
+
+  @Benchmark
+  public void importMessage(Tables tables) throws Exception
+  {
+    run(tables, "importMessage");
+  }
+}//end ImportBenchmark
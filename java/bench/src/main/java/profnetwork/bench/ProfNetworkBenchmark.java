@@ -0,0 +1,200 @@
+package profnetwork.bench;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import profnetwork.Database;
+import profnetwork.Member;
+import profnetwork.Message;
+import profnetwork.NameIndex;
+import profnetwork.Profile;
+import profnetwork.Server;
+
+/**
+ * Benchmarks of the ProfNetwork hot paths against a Postgres database
+ * loaded with the bundled CSV files, e.g. by ImportBenchmark, which
+ * bench/scripts/bench.sh runs first.  Each operation is run for a random
+ * user of a sample of data/USR-Table 1.csv.  The interactive screens are
+ * measured by the Database calls behind them, so no console I/O is timed.
+ *
+ * usage: java -jar bench/target/benchmarks.jar ProfNetworkBenchmark -p dbName=... -p port=... -p user=...
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfNetworkBenchmark
+{
+  private static final int SAMPLE_SIZE = 500;
+  private static final int RANGE_LEVELS = 3;
+
+  /**
+   * The database and the sampled users; searches here run SQL
+   */
+  @State(Scope.Benchmark)
+  public static class Users extends BenchDatabase
+  {
+    List<String[]> users;
+
+    @Setup(Level.Trial)
+    public void sample() throws Exception
+    {
+      users = sampleUsers(Database.USR_CSV.getCsvFile(), SAMPLE_SIZE, 166L);
+      // the login benchmark is useless when every attempt fails
+      String[] first = users.get(0);
+      if (!db.checkLogin(first[0], first[1]))
+      {
+        throw new IllegalStateException("USR has no user " + first[0] + ", run the imports first");
+      }
+    }
+  }//end Users
+
+  /**
+   * The database with the name index loaded, so searches are answered from memory
+   */
+  @State(Scope.Benchmark)
+  public static class Indexed extends Users
+  {
+    @Setup(Level.Trial)
+    public void loadIndex() throws Exception
+    {
+      db.loadNameIndex();
+    }
+  }//end Indexed
+
+  /**
+   * How readProfile fetches a profile: three queries, one UNION ALL query
+   * or one query aggregating with json_agg
+   */
+  @State(Scope.Benchmark)
+  public static class ProfileQuery
+  {
+    @Param({ Database.PROFILE_SEPARATE, Database.PROFILE_UNION, Database.PROFILE_JSON })
+    public String mode;
+  }
+
+  /**
+   * Picks the users of one benchmark thread
+   */
+  @State(Scope.Thread)
+  public static class Pick
+  {
+    private final Random random = new Random(166L);
+
+    String[] user(Users users)
+    {
+      return users.users.get(random.nextInt(users.users.size()));
+    }
+
+    /*
+    * Return the first name of a random user
+    */
+    String firstName(Users users)
+    {
+      String name = user(users)[2];
+      int space = name.indexOf(' ');
+      return space > 0 ? name.substring(0, space) : name;
+    }
+  }//end Pick
+
+  @Benchmark
+  public boolean login(Users users, Pick pick) throws Exception
+  {
+    String[] user = pick.user(users);
+    return users.db.checkLogin(user[0], user[1]);
+  }
+
+  @Benchmark
+  public boolean isUser(Users users, Pick pick)
+  {
+    return users.db.isUser(pick.user(users)[0]);
+  }
+
+  @Benchmark
+  public int friendCount(Users users, Pick pick) throws Exception
+  {
+    return users.db.getFriendCount(pick.user(users)[0]);
+  }
+
+  @Benchmark
+  public boolean isConnected(Users users, Pick pick) throws Exception
+  {
+    return users.db.isConnected(pick.user(users)[0], pick.user(users)[0]);
+  }
+
+  @Benchmark
+  public Profile readProfile(Users users, ProfileQuery query, Pick pick) throws Exception
+  {
+    String userId = pick.user(users)[0];
+    Profile profile = users.db.readProfile(userId, query.mode);
+    if (profile == null)
+    {
+      throw new IllegalStateException("USR has no user " + userId + ", run the imports first");
+    }
+    return profile;
+  }
+
+  @Benchmark
+  public NameIndex.Page searchName(Users users, Pick pick) throws Exception
+  {
+    return users.db.searchByName(pick.firstName(users), null, Server.PAGE_SIZE);
+  }
+
+  @Benchmark
+  public NameIndex.Page searchNameIndex(Indexed users, Pick pick) throws Exception
+  {
+    return users.db.searchByName(pick.firstName(users), null, Server.PAGE_SIZE);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Measurement(iterations = 5)
+  public NameIndex loadNameIndex(Users users) throws Exception
+  {
+    return users.db.loadNameIndex();
+  }
+
+  @Benchmark
+  public boolean checkLimitedRange(Users users, Pick pick) throws Exception
+  {
+    return users.db.checkLimitedRange(pick.user(users)[0], pick.user(users)[0], RANGE_LEVELS, new HashSet<String>());
+  }
+
+  /*
+  * The first page of the friends list, one more tells if there is a next page
+  */
+  @Benchmark
+  public List<Member> viewFriendsList(Users users, Pick pick) throws Exception
+  {
+    return users.db.getFriends(pick.user(users)[0], null, Server.PAGE_SIZE + 1);
+  }
+
+  /*
+  * The first page of the messages, which also marks them read
+  */
+  @Benchmark
+  public List<Message> readMessages(Users users, Pick pick) throws Exception
+  {
+    String userId = pick.user(users)[0];
+    List<Message> messages = users.db.getMessages(userId, (Message) null, Server.PAGE_SIZE + 1);
+    users.db.markMessagesRead(userId);
+    return messages;
+  }
+}//end ProfNetworkBenchmark
@@ -0,0 +1,184 @@
+package profnetwork.bench;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import profnetwork.CsvReader;
+import profnetwork.Database;
+
+/**
+ * Compares the friend request range check implementations on a database
+ * loaded with the bundled CSV data: the recursive Java search that runs one
+ * query per visited user (java, checkLimitedRange), the single recursive
+ * CTE (sql, checkRangeRecursive) and the bidirectional search over the
+ * in-memory FriendGraph (memory).  Each check takes the next of a sample of
+ * random pairs of users with an accepted connection in
+ * Connection-Table 1.csv.  After a trial the round trips per check and how
+ * often the answers agree with sql are printed.
+ *
+ * usage: java -jar bench/target/benchmarks.jar RangeCheckBenchmark -p dbName=... -p port=... -p user=...
+ *        [-p mode=java,sql,memory] [-p levels=3] [-p pairs=200]
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RangeCheckBenchmark
+{
+  private static final long SEED = 166L;
+
+  /**
+   * The database, the implementation checked and the sampled pairs
+   */
+  @State(Scope.Benchmark)
+  public static class Pairs extends BenchDatabase
+  {
+    @Param({ "java", "sql", "memory" })
+    public String mode;
+
+    @Param("3")
+    public int levels;
+
+    @Param("200")
+    public int pairs;
+
+    String[][] sample;
+    long borrows;
+    long checks;
+
+    @Setup(Level.Trial)
+    public void sample() throws Exception
+    {
+      sample = samplePairs(Database.CONNECTION_CSV.getCsvFile(), pairs, SEED);
+      if (mode.equals("memory"))
+      {
+        db.loadFriendGraph();
+      }
+      borrows = db.getPool().getBorrowCount();
+    }
+
+    /*
+    * Print the round trips per check and the agreement with sql, then close the database
+    */
+    @Override
+    public void close()
+    {
+      if (db != null)
+      {
+        try
+        {
+          report();
+        }
+        catch (Exception e)
+        {
+          System.err.println("Could not compare with sql: " + e.getMessage());
+        }
+      }
+      super.close();
+    }
+
+    private void report() throws Exception
+    {
+      long queries = db.getPool().getBorrowCount() - borrows;
+      int agree = 0;
+      for (String[] pair : sample)
+      {
+        if (check(this, pair) == db.checkRangeRecursive(pair[0], pair[1], levels))
+        {
+          ++agree;
+        }
+      }
+      System.out.format("%n%s: %.1f queries/check, agrees with sql on %d of %d pairs%s%n",
+        mode, checks == 0 ? 0.0 : (double) queries / checks, agree, sample.length,
+        mode.equals("java") ? " (the java search goes one level further than asked)" : "");
+    }
+  }//end Pairs
+
+  /**
+   * The position of one benchmark thread in the sample
+   */
+  @State(Scope.Thread)
+  public static class Cursor
+  {
+    int next = 0;
+  }
+
+  @Benchmark
+  public boolean check(Pairs pairs, Cursor cursor) throws Exception
+  {
+    String[] pair = pairs.sample[cursor.next];
+    cursor.next = (cursor.next + 1) % pairs.sample.length;
+    ++pairs.checks;
+    return check(pairs, pair);
+  }
+
+  private static boolean check(Pairs pairs, String[] pair) throws Exception
+  {
+    Database db = pairs.db;
+    if (pairs.mode.equals("java"))
+    {
+      return db.checkLimitedRange(pair[0], pair[1], pairs.levels, new HashSet<String>());
+    }
+    if (pairs.mode.equals("memory"))
+    {
+      return db.getFriendGraph().isWithin(pair[0], pair[1], pairs.levels);
+    }
+    return db.checkRangeRecursive(pair[0], pair[1], pairs.levels);
+  }
+
+  /*
+  * Pick random (from, to) pairs among users that have an accepted connection
+  */
+  private static String[][] samplePairs(String csvFile, int pairs, long seed) throws Exception
+  {
+    Set<String> users = new HashSet<String>();
+    try (CsvReader csv = new CsvReader(csvFile))
+    {
+      while (csv.next())
+      {
+        if (csv.getFieldCount() > 2 && csv.getString(2).equalsIgnoreCase("ACCEPT"))
+        {
+          users.add(csv.getString(0));
+          users.add(csv.getString(1));
+        }
+      }
+    }
+
+    List<String> ids = new ArrayList<String>(users);
+    if (ids.size() < 2)
+    {
+      throw new IllegalArgumentException("No accepted connections in " + csvFile);
+    }
+    Random random = new Random(seed);
+    String[][] sample = new String[pairs][];
+    for (int i = 0; i < pairs; i++)
+    {
+      String from = ids.get(random.nextInt(ids.size()));
+      String to;
+      do
+      {
+        to = ids.get(random.nextInt(ids.size()));
+      } while (to.equals(from));
+      sample[i] = new String[] { from, to };
+    }
+    return sample;
+  }//end samplePairs
+}//end RangeCheckBenchmark
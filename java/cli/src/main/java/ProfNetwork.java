@@ -9,28 +9,31 @@
  */
 
 
-import java.sql.DriverManager;
-import java.sql.Connection;
-import java.sql.Statement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.io.File;
-import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import profnetwork.Database;
+import profnetwork.Events;
+import profnetwork.FriendGraph;
+import profnetwork.ImportScheduler;
+import profnetwork.Member;
+import profnetwork.Message;
+import profnetwork.Metrics;
+import profnetwork.NameIndex;
+import profnetwork.Profile;
+import profnetwork.Server;
+
 /**
- * This class defines a simple embedded SQL utility class that is designed to
- * work with PostgreSQL JDBC drivers.
+ * The LinkedInk command line client.  Queries, connections and the
+ * friendship graph live in the profnetwork library (see Database); this
+ * class keeps the logged in user and the screens.
  *
  */
-public class ProfNetwork 
+public class ProfNetwork extends Database
 {
   boolean logged;     //If user is logged on
   String username;    //Desired username
@@ -38,9 +41,24 @@ public class ProfNetwork
   String name;        //Full name
   String email;       //Email
   String dob;         //Date of birth
-   
-  // reference to physical database connection.
-  private Connection _connection = null;
+
+  // load the friendship graph into memory at startup
+  static final boolean FRIEND_GRAPH = !"false".equalsIgnoreCase(System.getProperty("profnetwork.friendGraph"));
+
+  // load the user names into the in-memory search index at startup
+  static final boolean NAME_INDEX = !"false".equalsIgnoreCase(System.getProperty("profnetwork.nameIndex"));
+
+  // store sent messages through the write-behind queue instead of one insert per send
+  static final boolean MESSAGE_QUEUE = !"false".equalsIgnoreCase(System.getProperty("profnetwork.messageQueue"));
+
+  // search results, friends and messages shown at a time
+  static final int PAGE_SIZE = Integer.getInteger("profnetwork.pageSize", 20);
+
+  // serve the operations over TCP on this port instead of the keyboard, see profnetwork.Server
+  static final int SERVER_PORT = Integer.getInteger("profnetwork.server.port", 0);
+
+  // returned by getUserInputIndex when the next page is asked for
+  static final int NEXT_PAGE = -2;
 
   // handling the keyboard inputs through a BufferedReader
   // This variable can be global for convenience.
@@ -65,11 +83,11 @@ public class ProfNetwork
     try
     {
       // constructs the connection URL
-      String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+      String url = url(dbname, dbport);
       System.out.println ("Connection URL: " + url + "\n");
 
-      // obtain a physical connection
-      this._connection = DriverManager.getConnection(url, user, passwd);
+      // obtain the physical connections
+      connect(url, user, passwd);
       System.out.println("Done");
     }
     catch (Exception e)
@@ -80,286 +98,62 @@ public class ProfNetwork
     }//end catch
   }//end ProfNetwork
 
-  /**
-  * Method to execute an update SQL statement.  Update SQL instructions
-  * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
-  *
-  * @param sql the input SQL string
-  * @throws java.sql.SQLException when update failed
-  */
-  public void executeUpdate (String sql) throws SQLException 
-  {
-    // creates a statement object
-    Statement stmt = this._connection.createStatement ();
-
-    // issues the update instruction
-    stmt.executeUpdate (sql);
-
-    // close the instruction
-    stmt.close ();
-  }//end executeUpdate
-
-  /**
-  * Method to execute an input query SQL instruction (i.e. SELECT).  This
-  * method issues the query to the DBMS and outputs the results to
-  * standard out.
-  *
-  * @param query the input query string
-  * @return the number of rows returned
-  * @throws java.sql.SQLException when failed to execute the query
-  */
-  public int executeQuery (String query) throws SQLException 
-  {
-    // creates a statement object
-    Statement stmt = this._connection.createStatement ();
-
-    // issues the query instruction
-    ResultSet rs = stmt.executeQuery (query);
-
-    /*
-     ** obtains the metadata object for the returned result set.  The metadata
-     ** contains row and column info.
-     */
-    ResultSetMetaData rsmd = rs.getMetaData ();
-    int numCol = rsmd.getColumnCount ();
-    int rowCount = 0;
-
-    // iterates through the result set and output them to standard out.
-    //boolean outputHeader = true;
-    while (rs.next())
-    {
-      /*
-      if(outputHeader)
-      {
-        for(int i = 1; i <= numCol; i++)
-        {
-          System.out.print(rsmd.getColumnName(i) + "\t");
-        }
-        System.out.println();
-        outputHeader = false;
-      }
-      
-      for (int i=1; i<=numCol; ++i)
-        System.out.print (rs.getString (i) + "\t");
-      System.out.println ();
-      */
-      ++rowCount;
-    }//end while
-    stmt.close ();
-    return rowCount;
-  }//end executeQuery
-
-  /**
-   * Method to execute an input query SQL instruction (i.e. SELECT).  This
-   * method issues the query to the DBMS and returns the results as
-   * a list of records. Each record in turn is a list of attribute values
-   *
-   * @param query the input query string
-   * @return the query result as a list of records
-   * @throws java.sql.SQLException when failed to execute the query
-   */
-  public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException 
-  {
-    // creates a statement object
-    Statement stmt = this._connection.createStatement ();
-
-    // issues the query instruction
-    ResultSet rs = stmt.executeQuery (query);
-
-    /*
-    ** obtains the metadata object for the returned result set.  The metadata
-    ** contains row and column info.
-    */
-    ResultSetMetaData rsmd = rs.getMetaData ();
-    int numCol = rsmd.getColumnCount ();
-    int rowCount = 0;
-
-    // iterates through the result set and saves the data returned by the query.
-    boolean outputHeader = false;
-    List<List<String>> result  = new ArrayList<List<String>>();
-    while (rs.next())
-    {
-      List<String> record = new ArrayList<String>();
-      for (int i=1; i<=numCol; ++i)
-        record.add(rs.getString (i));
-      result.add(record);
-    }//end while
-    stmt.close ();
-    return result;
-  }//end executeQueryAndReturnResult
-
   /**
   * Method to execute an input query SQL instruction to get userinfo and store
   * results into the object
   *
-  * @param ProfNetwork object
-  * @return vodi
+  * @param username the user to load
   * @throws java.sql.SQLException when failed to execute the query
   */
   public void  UpdateUserInfo (String username) throws SQLException 
   {
-    String query =
-      "SELECT  userId, password, email, name, dateOfBirth "
-      +"FROM USR "
-      +"WHERE userId = '"+username+"';";
-
-    // creates a statement object
-    Statement stmt = this._connection.createStatement ();
-
-    // issues the query instruction
-    ResultSet rs = stmt.executeQuery (query);
-
-    /*
-     ** obtains the metadata object for the returned result set.  The metadata
-     ** contains row and column info.
-     */
-    ResultSetMetaData rsmd = rs.getMetaData ();
-    int numCol = rsmd.getColumnCount ();
-    int rowCount = 0;
-
-    rs.next();
-    rs.next();
-   
-    this.username = rs.getString (1);
-    this.password = rs.getString (2);
-    this.email = rs.getString (3);
-    this.name = rs.getString (4);
-    this.dob = rs.getString (5);
-      
-    stmt.close ();
-    
-  }//end UpdateUserInfo
-
-  /**
-   * Method to fetch the last value from sequence. This
-   * method issues the query to the DBMS and returns the current
-   * value of sequence used for autogenerated keys
-   *
-   * @param sequence name of the DB sequence
-   * @return current value of a sequence
-   * @throws java.sql.SQLException when failed to execute the query
-   */
-  public int getCurrSeqVal(String sequence) throws SQLException 
-  {
-    Statement stmt = this._connection.createStatement ();
+    Profile user = getUserProfile (username);
+    if (user == null)
+    {
+      throw new SQLException("User not found: " + username);
+    }
 
-    ResultSet rs = stmt.executeQuery (String.format("Select nextval('%s')", sequence));
-    if (rs.next())
-      return rs.getInt(1);
-    return -1;
-  }
-  
-  
-  public List<List<String>> getCSV(String csvFile) {
- 
-    //String csvFile = "USR-Table 1.csv";
-    BufferedReader br = null;
-    String line = "";
-    String cvsSplitBy = ",";
-    boolean containsBad = false;   
+    this.username = user.getUserId();
+    this.password = user.getPassword();
+    this.email = user.getEmail();
+    this.name = user.getName();
+    this.dob = user.getDateOfBirth();
+  }//end UpdateUserInfo
 
-    List<List<String>> result  = new ArrayList<List<String>>();
+  //==============END: HELPER FUNCTIONS (SQL)============================================================
+  //===================================================================================================== 
+  //==============BEGIN: HELPER FUNCTIONS (user input)===================================================
 
-    try 
+  /*
+  * Return an index of a paged list from user input: -1 on Enter, NEXT_PAGE on n when more is true
+  */
+  public static int getUserInputIndex(String prompt, int maxValue, boolean more)
+  {
+    while (true)
     {
-      br = new BufferedReader(new FileReader(csvFile));
-      while ((line = br.readLine()) != null) 
+      String s = getUserInputString(prompt);
+      if (s == null || s.equals(""))
       {
-   
-        // use comma as separator
-        String[] next = line.split(cvsSplitBy);
-       
-        containsBad = false; 
-        for (String s : next)
-        {
-          if (s.contains("'"))
-          {
-            containsBad = true;
-            break;
-          }
-        }
-        if (containsBad)
-        {
-          continue;
-        }
-
-        //if(usr[0].contains("'") || usr[1].contains("'") || usr[2].contains("'") || usr[3].contains("'") || usr[4].contains("'"))
-        //  continue;
-   
-        //System.out.println(usr[0] + " " + usr[1]);
-   
-        List<String> record = new ArrayList<String>();
-        for(int i=0; i < next.length; i++ )
-          record.add(next[i]);
-        result.add(record);
+        return -1;
       }
-   
-    } 
-    catch (Exception e) 
-    {
-      e.printStackTrace();
-    }  
-    finally 
-    {
-      if (br != null) 
+      if (more && s.equalsIgnoreCase("n"))
       {
-        try 
-        {
-          br.close();
-        } 
-        catch ( Exception e) 
+        return NEXT_PAGE;
+      }
+      try
+      {
+        int input = Integer.parseInt(s.trim());
+        if (input >= 0 && input <= maxValue)
         {
-          e.printStackTrace();
+          return input;
         }
       }
-	  }
- 
-	  //System.out.println("Done");
-	  return result;
-  }
-
-  /**
-  * Method to close the physical connection if it is open.
-  */
-  public void cleanup()
-  {
-    try
-    {
-      if (this._connection != null)
+      catch (NumberFormatException e)
       {
-        this._connection.close ();
-      }//end if
-    }catch (SQLException e){
-      // ignored.
-    }//end try
-  }//end cleanup
-
-  /*
-  * Return if username exists
-  */
-  public boolean isUser(String username)
-  {
-    int rowCount = 0;
-    try 
-    { // See if username exists
-      String query =
-        "SELECT  USR.userId "
-        +"FROM USR  "
-        +"WHERE USR.userId = '"+username+"';";
-      
-      rowCount = executeQuery(query); 
-      //System.out.println("total row(s): " + rowCount); 
-    }
-    catch(Exception e)
-    {
-      //System.err.println(e.getMessage()); 
+      }
+      System.out.println("!! ERROR: Invalid input !!");
     }
-    return rowCount > 0;
-  }
-
-  //==============END: HELPER FUNCTIONS (SQL)============================================================
-  //===================================================================================================== 
-  //==============BEGIN: HELPER FUNCTIONS (user input)===================================================
+  }//end getUserInputIndex() -> int
 
   /*
   * Return int from user input
@@ -513,22 +307,50 @@ public class ProfNetwork
     try
     {
       // use postgres JDBC driver.
-      Class.forName ("org.postgresql.Driver").newInstance ();
+      Class.forName ("org.postgresql.Driver");
       // instantiate the EmbeddedSQL object and creates a physical connection.
       String dbname = args[0];
       String dbport = args[1];
       String user = args[2];
       esql = new ProfNetwork (dbname, dbport, user, "");
+      Metrics.export();
       
       
       if (getUserInputString("Import Data from Excel (yes or no)? ").equals("yes"))
       {
         // Import Data from CSV
-        importUsr(esql);
-        //importMessage(esql);
-        importConnection(esql);
-        importWorkExperience(esql);
-        importEducationDetails(esql);
+        importAll(esql);
+      }
+
+      if (FRIEND_GRAPH)
+      {
+        long start = System.nanoTime();
+        FriendGraph graph = esql.loadFriendGraph();
+        System.out.format("Friend graph: %d users, %d friendships loaded in %.1fms\n",
+          graph.getUserCount(), graph.getFriendshipCount(), (System.nanoTime() - start) / 1e6);
+      }
+
+      if (NAME_INDEX)
+      {
+        long start = System.nanoTime();
+        NameIndex names = esql.loadNameIndex();
+        System.out.format("Name index: %d users loaded in %.1fms\n",
+          names.getUserCount(), (System.nanoTime() - start) / 1e6);
+      }
+
+      if (SERVER_PORT > 0)
+      {
+        // many users over the network, each session with its own login; the keyboard only stops the server
+        Server server = new Server(esql, SERVER_PORT, MESSAGE_QUEUE);
+        System.out.println("Serving on port " + server.start() + " (Enter for statistics, quit to stop)");
+        String line;
+        while ((line = in.readLine()) != null && !line.trim().equalsIgnoreCase("quit"))
+        {
+          System.out.println(server.getStats());
+        }
+        server.stop();
+        System.out.println(server.getStats());
+        return;
       }
 
       LoginPrompt(esql);
@@ -550,19 +372,32 @@ public class ProfNetwork
         System.out.println("7. Read Messages" );
         System.out.println("9. < EXIT");
 
-        switch (getUserInputInt("Select option: "))
+        int option = getUserInputInt("Select option: ");
+        // timed with the keyboard input of the screen, so apart from the server's operations
+        String operation = null;
+        long start = Metrics.start();
+        Events.Screen event = new Events.Screen();
+        event.begin();
+        switch (option)
         {
-          case 0: ChangePassword(esql); break;
-          case 1: EditProfile(esql); break;
-          case 2: SearchName(esql); break;
-          case 3: SendFriendRequests(esql); break;
-          case 4: ViewFriendRequests(esql); break;
-          case 5: ViewFriendsList(esql); break;
-          case 6: SendMessages(esql); break;
-          case 7: ReadMessages(esql); break;
+          case 0: operation = "ChangePassword"; ChangePassword(esql); break;
+          case 1: operation = "EditProfile"; EditProfile(esql); break;
+          case 2: operation = "SearchName"; SearchName(esql); break;
+          case 3: operation = "SendFriendRequests"; SendFriendRequests(esql); break;
+          case 4: operation = "ViewFriendRequests"; ViewFriendRequests(esql); break;
+          case 5: operation = "ViewFriendsList"; ViewFriendsList(esql); break;
+          case 6: operation = "SendMessages"; SendMessages(esql); break;
+          case 7: operation = "ReadMessages"; ReadMessages(esql); break;
           case 9: keepon = false; break;
           default : System.out.println("!! ERROR: Invalid Selection !!"); break;
         }//end switch
+        if (operation != null)
+        {
+          Metrics.stop(Metrics.SCREEN, operation, start, false);
+          event.name = operation;
+          event.user = esql.username;
+          event.commit();
+        }
       }//end while
     }//end try
     catch(Exception e) 
@@ -576,6 +411,12 @@ public class ProfNetwork
       {
         if(esql != null) 
         {
+          System.out.println(esql.getStats());
+          if (Metrics.ENABLED)
+          {
+            System.out.print(Metrics.toLog());
+          }
+          Metrics.stopExport();
           System.out.print("Disconnecting from database...");
           esql.cleanup ();
           System.out.println("Done\n\nBye !");
@@ -592,29 +433,21 @@ public class ProfNetwork
   //=====================================================================================================
   //=============BEGIN: HELPER FUNCTIONS (IMPORT DATABASE)===============================================
   
+  /*
+  * Import all tables from csv files; tables that only depend on usr load in parallel
+  */
+  public static void importAll(ProfNetwork esql)
+  {
+    //MESSAGE_CSV is left out
+    runImport(esql, USR_CSV, CONNECTION_CSV, WORK_EXPR_CSV, EDUCATIONAL_DETAILS_CSV);
+  }
+
   /*
   * Import usr table from csv file 
   */
   public static void importUsr(ProfNetwork esql)
   {
-    List<List<String>> result  = new ArrayList<List<String>>();
-    result = esql.getCSV("../../data/USR-Table 1.csv");
-
-    System.out.println("Loading users...");
-    
-    for ( List<String> usr : result )
-    {
-      String sql = "INSERT INTO USR VALUES ('" + usr.get(0) + "','" + usr.get(1) + "','" + usr.get(2) + "','" + usr.get(3) + "','" + usr.get(4) + "');";
-      try 
-      {
-        esql.executeUpdate(sql);
-        
-      }//end try
-      catch(Exception e)
-      {
-        System.err.println(e.getMessage());
-      }//end catch
-    }  
+    runImport(esql, USR_CSV);
   }
 
   /*
@@ -622,34 +455,7 @@ public class ProfNetwork
   */
   public static void importMessage(ProfNetwork esql)
   {
-    String status;
-    List<List<String>> result  = new ArrayList<List<String>>();
-    result = esql.getCSV("../../data/Message-Table 1.csv");
-    
-    System.out.println("Loading messages...");
-    
-    for ( List<String> message : result )
-    {
-      status = message.get(6);
-      if (status.equals("Delivered") || status.equals("Sent") || status.equals("Draft"))
-      {
-        status = "UNREAD";
-      }
-      else if (status.equals("Read"))
-      {
-        status = "READ";
-      }
-
-      String sql = "INSERT INTO MESSAGE VALUES ('" + message.get(0) + "','" + message.get(1) + "','" + message.get(2) + "','" + message.get(3) + "','" + message.get(4) + "'," + message.get(5) + ",'" + status + "');";
-      try 
-      {
-        esql.executeUpdate(sql);
-      }//end try
-      catch(Exception e)
-      {
-        System.err.println(e.getMessage());
-      }//end catch
-    }  
+    runImport(esql, MESSAGE_CSV);
   }
 
   /*
@@ -657,25 +463,7 @@ public class ProfNetwork
   */
   public static void importConnection(ProfNetwork esql)
   {
-    String status;
-    List<List<String>> result  = new ArrayList<List<String>>();
-    result = esql.getCSV("../../data/Connection-Table 1.csv");
-    
-    System.out.println("Loading connections...");
-    
-    for ( List<String> connection : result )
-    {
-      status = connection.get(2).toUpperCase();
-      String sql = "INSERT INTO CONNECTION_USR VALUES ('" + connection.get(0) + "','" + connection.get(1) + "','" + status + "');";
-      try 
-      {
-        esql.executeUpdate(sql);
-      }//end try
-      catch(Exception e)
-      {
-        System.err.println(e.getMessage());
-      }//end catch
-    }  
+    runImport(esql, CONNECTION_CSV);
   }
 
   /*
@@ -683,24 +471,7 @@ public class ProfNetwork
   */
   public static void importWorkExperience(ProfNetwork esql)
   {
-    String status;
-    List<List<String>> result  = new ArrayList<List<String>>();
-    result = esql.getCSV("../../data/Work_Ex-Table 1.csv");
-    
-    System.out.println("Loading work experience...");
-    
-    for ( List<String> work : result )
-    {
-      String sql = "INSERT INTO WORK_EXPR VALUES ('" + work.get(0) + "','" + work.get(1) + "','" + work.get(2) + "','" + work.get(3) + "','" + work.get(4) + "','" + work.get(5) + "');";
-      try 
-      {
-        esql.executeUpdate(sql);
-      }//end try
-      catch(Exception e)
-      {
-        System.err.println(e.getMessage());
-      }//end catch
-    }  
+    runImport(esql, WORK_EXPR_CSV);
   }
 
   /*
@@ -708,24 +479,19 @@ public class ProfNetwork
   */
   public static void importEducationDetails(ProfNetwork esql)
   {
-    String status;
-    List<List<String>> result  = new ArrayList<List<String>>();
-    result = esql.getCSV("../../data/Edu_Det-Table 1.csv");
-    
-    System.out.println("Loading education details...");
-    
-    for ( List<String> edu : result )
+    runImport(esql, EDUCATIONAL_DETAILS_CSV);
+  }
+
+  private static void runImport(ProfNetwork esql, ImportScheduler.Table... tables)
+  {
+    try 
     {
-      String sql = "INSERT INTO EDUCATIONAL_DETAILS VALUES ('" + edu.get(0) + "','" + edu.get(1) + "','" + edu.get(2) + "','" + edu.get(3) + "','" + edu.get(4) + "','" + edu.get(5) + "');";
-      try 
-      {
-        esql.executeUpdate(sql);
-      }//end try
-      catch(Exception e)
-      {
-        System.err.println(e.getMessage());
-      }//end catch
-    }  
+      esql.importTables(tables);
+    }//end try
+    catch(Exception e)
+    {
+      System.err.println(e.getMessage());
+    }//end catch
   }
 
   //=============END: HELPER FUNCTIONS (IMPORT DATABASE)=================================================
@@ -746,7 +512,6 @@ public class ProfNetwork
 
     String username;
     String password; 
-    int rowCount = 0;
 
     // Login credentials
     while (true)
@@ -757,17 +522,10 @@ public class ProfNetwork
       try 
       { 
         // See if username and password combo exist
-        String query =
-          "SELECT  USR.userId "
-          +"FROM USR  "
-          +"WHERE USR.userId = '"+username+"' AND USR.password = '"+password+"';";
-        
-        rowCount = esql.executeQuery(query); 
-        if (rowCount > 0)
+        if (esql.checkLogin(username, password))
         {
           break;
         }
-        //System.out.println("total row(s): " + rowCount); 
       }
       catch(Exception e)
       {
@@ -823,10 +581,9 @@ public class ProfNetwork
       name = getUserInputString("Your Full Name: ", 50);              //Input name
       dob = getUserInputString("Your Date of Birth (YYYY/MM/DD) : "); //Input date of birth
 
-      String sql = "INSERT INTO USR VALUES ('" + username + "','" + password + "','" + email + "','" + name + "','" + dob + "');";
       try 
       {
-        esql.executeUpdate(sql);
+        esql.createUser(username, password, email, name, dob);
         System.out.println("User craeated: "+ username + " " + password + " " + email + " " + name + " " + dob);
         esql.UpdateUserInfo(username);
         System.out.println("User logged in: "+username);
@@ -854,19 +611,28 @@ public class ProfNetwork
     while (!done)
     {
       done = true;
+      Events.Screen event = new Events.Screen();
+      event.begin();
       switch (getUserInputInt("Select option: ", 1))
       {
         case 0:
           SignUp(esql);
+          event.name = "SignUp";
           break;
         case 1:
           Login(esql);
+          event.name = "Login";
           break;
         default : 
           System.out.println("!! Invalid option !!"); 
           done = false;
           break;
       }//end switch 
+      if (event.name != null)
+      {
+        event.user = esql.username;
+        event.commit();
+      }
     }//end while
   } //end LoginPrompt()
 
@@ -890,10 +656,9 @@ public class ProfNetwork
       return; 
     }
 
-	  String sql = "UPDATE USR SET password = '"+password+"' WHERE USR.userId = '"+esql.username+"';";
 	  try 
     {
-	    esql.executeUpdate(sql);
+	    esql.changePassword(esql.username, password);
     }
     catch(Exception e)
     {
@@ -909,52 +674,38 @@ public class ProfNetwork
 
   public static void ViewProfile(ProfNetwork esql, String username)
   {
-    String sql; 
-    List<List<String>> overview, workExp, eduDet; 
+    Profile profile;
 
     try
     {
-      sql = "SELECT * "
-           +"FROM   USR U "
-           +"WHERE  U.userId='"+username+"'";
-      overview = esql.executeQueryAndReturnResult(sql);
-      sql = "SELECT * "
-           +"FROM WORK_EXPR W "
-           +"WHERE W.userId='"+username+"'";
-      workExp = esql.executeQueryAndReturnResult(sql);
-      sql = "SELECT * "
-           +"FROM EDUCATIONAL_DETAILS E "
-           +"WHERE E.userId='"+username+"'";
-      eduDet = esql.executeQueryAndReturnResult(sql);
+      // one round trip, or none when the profile is cached
+      profile = esql.getUserProfile(username);
       
-      if (overview.isEmpty())
+      if (profile == null)
       {
         System.out.println("!! ERROR: User Not Found !!");
         return;
       }
       System.out.println("* OVERVIEW *");
-      for (List<String> user : overview)
-      {
-        System.out.format("\t%-30s\n", user.get(0));
-        System.out.format("\t%-30s\n", user.get(2));
-        System.out.format("\t%-30s\n", user.get(3));
-        System.out.format("\t%-30s\n", user.get(4));
-      }
+      System.out.format("\t%-30s\n", profile.getUserId());
+      System.out.format("\t%-30s\n", profile.getEmail());
+      System.out.format("\t%-30s\n", profile.getName());
+      System.out.format("\t%-30s\n", profile.getDateOfBirth());
       System.out.println("* WORK EXPERIENCE *");
-      for (List<String> work : workExp)
+      for (Profile.Work work : profile.getWork())
       {
-        System.out.format("%s - %s\n", work.get(4), work.get(5));
-        System.out.format("\t%-30s\n", work.get(1));
-        System.out.format("\t%-30s\n", work.get(2));
-        System.out.format("\t%-30s\n", work.get(3));
+        System.out.format("%s - %s\n", work.getStartDate(), work.getEndDate());
+        System.out.format("\t%-30s\n", work.getCompany());
+        System.out.format("\t%-30s\n", work.getRole());
+        System.out.format("\t%-30s\n", work.getLocation());
       }
       System.out.println("* EDUCATIONAL DETAILS *");
-      for (List<String> edu : eduDet)
+      for (Profile.Education edu : profile.getEducation())
       {
-        System.out.format("%s - %s\n", edu.get(4), edu.get(5));
-        System.out.format("\t%-30s\n", edu.get(1));
-        System.out.format("\t%-30s\n", edu.get(2));
-        System.out.format("\t%-30s\n", edu.get(3));
+        System.out.format("%s - %s\n", edu.getStartDate(), edu.getEndDate());
+        System.out.format("\t%-30s\n", edu.getInstitution());
+        System.out.format("\t%-30s\n", edu.getMajor());
+        System.out.format("\t%-30s\n", edu.getDegree());
       }
     }
     catch(Exception e)
@@ -970,29 +721,42 @@ public class ProfNetwork
   {
     clrScreen();
 
-    String name, sql;
-    List<List<String>> result;
+    String name;
+    NameIndex.Page result;
 
     while (true)
     {
       try 
       {
         name = getUserInputString("Search For (Name or Enter to Cancel): ");
-        if (name.isEmpty())
+        if (name == null || name.isEmpty())
         {
           break;
         }
-        sql = "SELECT userId, name FROM USR WHERE name ILIKE '%" + name + "%';";
-        result = esql.executeQueryAndReturnResult(sql);
-        if (result.isEmpty())
-        {
-          System.out.println("No Results.");
-        }
-        for (List<String> sublist : result)
+        result = null;
+        while (true)
         {
-          System.out.format("%-30s%-30s", sublist.get(0), sublist.get(1));
-          System.out.println();
-        }
+          result = esql.searchByName(name, result, PAGE_SIZE);
+          if (result.getTotal() == 0)
+          {
+            System.out.println("No Results.");
+          }
+          for (int i = 0; i < result.size(); i++)
+          {
+            System.out.format("%-30s%-30s", result.getUserId(i), result.getName(i));
+            System.out.println();
+          }
+          int shown = result.getOffset() + result.size();
+          if (result.size() == 0 || shown >= result.getTotal())
+          {
+            break;
+          }
+          System.out.println("Showing " + shown + " of " + result.getTotal() + " results.");
+          if (!"n".equalsIgnoreCase(getUserInputString("Next Page (n or Enter to Stop): ")))
+          {
+            break;
+          }
+        }//end while
       }
       catch(Exception e)
       {
@@ -1010,7 +774,7 @@ public class ProfNetwork
   */
   public static void SendFriendRequests(ProfNetwork esql)
   {
-    String connectionid, sql;
+    String connectionid;
     int friendCount = 0; 
 
     System.out.println("* * * * Send New Friend Requests * * * *");
@@ -1018,12 +782,7 @@ public class ProfNetwork
     //get number of friends 
     try
     {
-      sql = "SELECT U.userId, U.name "
-           +"FROM   USR U, CONNECTION_USR C "
-           +"WHERE  U.userId != '" + esql.username + "' AND C.status='ACCEPT' "
-                  + "AND ((U.userId = C.userId AND C.connectionId = '" + esql.username + "') "
-                  +"OR (C.userId = '" + esql.username + "' AND C.connectionId = U.userId))";
-      friendCount = esql.executeQuery(sql);  //number of friends
+      friendCount = esql.getFriendCount(esql.username);
     }
     catch(Exception e)
     {
@@ -1045,7 +804,7 @@ public class ProfNetwork
         {
           System.out.println("!! ERROR: User does not exist !!");
         }
-        else if (esql.isConnected(esql, connectionid))
+        else if (isConnected(esql, connectionid))
         {
           System.out.println("!! ERROR: Already connected with this user !!");
         }
@@ -1058,19 +817,27 @@ public class ProfNetwork
       //if necessary, check the level of connections
       if (friendCount >= 5)
       {
-        HashSet set = new HashSet();
-        if (!CheckLimitedRange(esql, esql.username, connectionid, 3, set))
+        FriendGraph graph = RANGE_CHECK.equals("memory") ? esql.getFriendGraph() : null;
+        String[] path = null;
+        if (graph != null)
+        {
+          path = graph.findPath(esql.username, connectionid, 3);
+        }
+        if (graph != null ? path == null : !CheckRange(esql, connectionid, 3))
         {
           System.out.println("!! ERROR: User is not within third level of connections !!");
           continue;
         }
+        if (path != null && path.length > 2)
+        {
+          System.out.println("Connected via " + DescribePath(graph, path) + ".");
+        }
       }
 
       //send connection request to user
       try
       {
-        sql = "INSERT INTO CONNECTION_USR VALUES ('" + esql.username + "','" + connectionid + "','REQUEST');";
-        esql.executeUpdate(sql);
+        esql.sendConnectionRequest(esql.username, connectionid);
       }//end try
       catch(Exception e)
       {
@@ -1086,65 +853,57 @@ public class ProfNetwork
   */
   public static boolean isConnected(ProfNetwork esql, String username)
   {
-    String sql;
-    int rowCount = 0;
-
     try
     {
-      sql = "SELECT  * "
-           +"FROM    CONNECTION_USR C "
-           +"WHERE   (C.userId='" + esql.username + "' AND C.connectionId='" + username + "') "
-                +"OR (C.userId='" + username + "' AND C.connectionId='" + esql.username + "')";
-      rowCount = esql.executeQuery(sql);
+      return esql.isConnected(esql.username, username);
     }
     catch(Exception e)
     {
       System.out.println(e.getMessage());
     }
-    return rowCount > 0;
+    return false;
   }
 
   /*
-  * Send friend requests to people within 3 levels
+  * Return the users between the two ends of a friendship path, e.g. "Ann (ann1) -> Bob (bob7)"
   */
-  public static boolean CheckLimitedRange(ProfNetwork esql, String username, String connectionid, int maxLevel, HashSet set)
+  public static String DescribePath(FriendGraph graph, String[] path)
   {
-    String sql;
-    List<List<String>> range; 
-
-    //System.out.println("CHECKING LEVEL");
-
-    if (maxLevel < 0 || set.contains(username))
+    StringBuilder via = new StringBuilder();
+    for (int i = 1; i < path.length - 1; i++)
     {
-      return false;
+      if (i > 1)
+      {
+        via.append(" -> ");
+      }
+      String name = graph.getName(graph.indexOf(path[i]));
+      if (name != null && name.trim().length() > 0)
+      {
+        via.append(name.trim()).append(" (").append(path[i].trim()).append(")");
+      }
+      else
+      {
+        via.append(path[i].trim());
+      }
     }
-    set.add(username); 
+    return via.toString();
+  }
 
+  /*
+  * Return if connectionid is within maxLevel levels of connections of the current user,
+  * using the graph search picked with -Dprofnetwork.rangeCheck (memory, sql or java)
+  */
+  public static boolean CheckRange(ProfNetwork esql, String connectionid, int maxLevel)
+  {
     try
     {
-      sql = "SELECT U.userId, U.name "
-           +"FROM   USR U, CONNECTION_USR C "
-           +"WHERE  U.userId != '" + username + "' AND C.status='ACCEPT' "
-                  + "AND ((U.userId = C.userId AND C.connectionId = '" + username + "') "
-                  +"OR (C.userId = '" + username + "' AND C.connectionId = U.userId))";
-      range = esql.executeQueryAndReturnResult(sql);
-      for (List<String> sublist : range)
-      {
-        username = sublist.get(0).trim();
-        if (username.equals(connectionid) || CheckLimitedRange(esql, username, connectionid, maxLevel-1, set))
-        {
-          //System.out.println("EQUALS " + username + " = " + connectionid);
-          return true;
-        }
-        //System.out.println(maxLevel + " : " + username);
-      }
+      return esql.checkRange(esql.username, connectionid, maxLevel);
     }
     catch(Exception e)
     {
       System.out.println(e.getMessage());
     }
-
-    return false; 
+    return false;
   }
 
   /*
@@ -1152,7 +911,7 @@ public class ProfNetwork
   */
   public static void ViewFriendRequests(ProfNetwork esql)
   {
-    String sql, status; 
+    boolean accept; 
     List<List<String>> connectionRequests;
     int respondTo;
 
@@ -1160,8 +919,7 @@ public class ProfNetwork
 
     try
     {
-      sql = "SELECT C.userId FROM CONNECTION_USR C WHERE C.status='REQUEST' AND C.connectionid='" + esql.username + "';";
-      connectionRequests = esql.executeQueryAndReturnResult(sql); 
+      connectionRequests = esql.getConnectionRequests(esql.username); 
     }
     catch(Exception e)
     {
@@ -1198,10 +956,10 @@ public class ProfNetwork
       switch(getUserInputInt("Select Option: ", 1))
       {
         case 0:   //accept
-          status = "ACCEPT";
+          accept = true;
           break;
         case 1:   //decline
-          status = "DECLINE";
+          accept = false;
           break; 
         default:
           return;
@@ -1209,8 +967,7 @@ public class ProfNetwork
       //update connection status
       try 
       {
-        sql = "UPDATE CONNECTION_USR SET status='"+status+"' WHERE CONNECTION_USR.userId='"+connectionRequests.get(respondTo).get(0)+"' AND CONNECTION_USR.connectionId='"+esql.username+"'";
-        esql.executeUpdate(sql);
+        esql.respondToConnectionRequest(connectionRequests.get(respondTo).get(0), esql.username, accept);
       }
       catch(Exception e)
       {
@@ -1226,49 +983,59 @@ public class ProfNetwork
   */
   public static void ViewFriendsList(ProfNetwork esql)
   {
-    String sql; 
-    List<List<String>> friendsList;
+    List<Member> friendsList;
     int viewProfileOf;
+    String after = null;    //last userId of the previous page
 
-    try
-    {
-      sql = "SELECT U.userId, U.name "
-           +"FROM   USR U, CONNECTION_USR C "
-           +"WHERE  U.userId != '" + esql.username + "' AND C.status='ACCEPT' "
-                  + "AND ((U.userId = C.userId AND C.connectionId = '" + esql.username + "') "
-                  +"OR (C.userId = '" + esql.username + "' AND C.connectionId = U.userId))";
-      friendsList = esql.executeQueryAndReturnResult(sql); 
-    }
-    catch(Exception e)
-    {
-      System.err.println(e.getMessage());
-      return;
-    }
-
-    //if no friends 
-    if (friendsList.isEmpty())
-    {
-      getUserInputString("No Friends. Enter to Continue.");
-      return; 
-    }
-    
     while (true)
     {
-      //list usernames and names of friends 
-      System.out.println("* * * * FRIENDS * * * *");
-      for (int i = 0; i < friendsList.size(); ++i)
+      try
       {
-        System.out.format("%-3d%-13s%s", i, friendsList.get(i).get(0), friendsList.get(i).get(1));
-        System.out.println();
+        // one more than a page tells if there is a next page
+        friendsList = esql.getFriends(esql.username, after, PAGE_SIZE + 1); 
       }
-      viewProfileOf = getUserInputInt("View Profile of (Enter to Continue): ", friendsList.size()-1); 
-      if (viewProfileOf < 0)
+      catch(Exception e)
       {
+        System.err.println(e.getMessage());
         return;
       }
-      //System.out.println("Profile of... " + friendsList.get(viewProfileOf).get(0) + ": " + friendsList.get(viewProfileOf).get(1));
-      ViewProfile( esql, friendsList.get(viewProfileOf).get(0) );
-      getUserInputString("Enter to Continue.");
+
+      //if no friends 
+      if (friendsList.isEmpty())
+      {
+        getUserInputString(after == null ? "No Friends. Enter to Continue." : "No More Friends. Enter to Continue.");
+        return; 
+      }
+      boolean more = friendsList.size() > PAGE_SIZE;
+      if (more)
+      {
+        friendsList = friendsList.subList(0, PAGE_SIZE);
+      }
+
+      while (true)
+      {
+        //list usernames and names of friends 
+        System.out.println("* * * * FRIENDS * * * *");
+        for (int i = 0; i < friendsList.size(); ++i)
+        {
+          System.out.format("%-3d%-13s%s", i, friendsList.get(i).getUserId(), friendsList.get(i).getName());
+          System.out.println();
+        }
+        viewProfileOf = getUserInputIndex(more ? "View Profile of (n for Next Page, Enter to Continue): "
+                                               : "View Profile of (Enter to Continue): ", friendsList.size()-1, more); 
+        if (viewProfileOf == NEXT_PAGE)
+        {
+          break;
+        }
+        if (viewProfileOf < 0)
+        {
+          return;
+        }
+        ViewProfile( esql, friendsList.get(viewProfileOf).getUserId() );
+        getUserInputString("Enter to Continue.");
+        clrScreen();
+      }
+      after = friendsList.get(friendsList.size() - 1).getUserId();
       clrScreen();
     }
 
@@ -1288,9 +1055,8 @@ public class ProfNetwork
     String senderid = esql.username;        //Username of sender
     String receiverid;                      //Username of receiver (to be entered)
     String contents;                        //Contents of message (to be entered)
-    String status = "UNREAD";               //Status of read or unread 
-    int deleteStatus = 0;                   //Status of deletion 
-    String sendTime = new SimpleDateFormat("MM-dd-yyyy HH:mm:ss").format(new Date()); //Get current date and time in SQL format
+    String sendTime;                        //Time the message is sent
+    SimpleDateFormat timeFormat = new SimpleDateFormat("MM-dd-yyyy HH:mm:ss"); //date and time in SQL format
 
     while (true)
     {
@@ -1309,30 +1075,24 @@ public class ProfNetwork
         System.out.println("!! ERROR: Username does not exist !!");
       }
       contents = getUserInputString("Message: ");
-
-      int keyVal = 0;
-      try 
-      {
-        keyVal = esql.getCurrSeqVal("msg");
-      }
-      catch(Exception e)
-      {
-        System.err.println(e.getMessage());
-      }
-
-      System.out.println("TEST keyVal: "+keyVal);
-    
-      String sql = "INSERT INTO MESSAGE VALUES ('"+keyVal+"','"+ senderid +"','"+receiverid+"','"+contents+"','"+sendTime+"','"+deleteStatus+"','"+status+"');";
+      sendTime = timeFormat.format(new Date());
 
       try 
       {
-        esql.executeUpdate(sql);
+        if (MESSAGE_QUEUE)
+        {
+          esql.queueMessage(senderid, receiverid, contents, sendTime);
+        }
+        else
+        {
+          esql.sendMessage(senderid, receiverid, contents, sendTime);
+        }
+        System.out.println("Message sent to "+receiverid);
       }
       catch(Exception e)
       {
         System.err.println(e.getMessage());
       }
-      System.out.println("Message sent to "+receiverid);
       System.out.println("* * * * NEXT MESSAGE * * * *");
 	  }
   }
@@ -1342,89 +1102,71 @@ public class ProfNetwork
   */
   public static void ReadMessages(ProfNetwork esql)
   {
-    String sql; 
-    List<List<String>> messages;
-    List<String> message;
-    int toDelete = 0, newDeleteStatus = 0; 
-    String msgid, senderid, receiverid, deleteStatus; 
-
-    try
-    {
-      //get all messages to/from user
-      sql = "SELECT * "
-            +"FROM MESSAGE M "
-            +"WHERE (M.senderId='"+esql.username+"' AND (M.deleteStatus=0 OR M.deleteStatus=2)) "
-               +"OR (M.receiverId='"+esql.username+"' AND (M.deleteStatus=0 OR M.deleteStatus=1))"; 
-      messages = esql.executeQueryAndReturnResult(sql);
-      //update unread messages to read
-      sql = "UPDATE MESSAGE SET status='READ' WHERE MESSAGE.receiverId='"+esql.username+"' AND STATUS='UNREAD'";
-	    esql.executeUpdate(sql);
-    }//end try
-    catch(Exception e)
-    {
-      System.err.println(e.getMessage());
-      return; 
-    }//end catch
+    List<Message> messages;
+    Message message;
+    int toDelete = 0; 
+    Message after = null; //last message of the previous page
+    boolean more;
 
     System.out.println("* * * * Messages * * * *");
-    
-    //if there are no messages
-    if (messages.isEmpty())
-    {
-      getUserInputString("No Messages");
-      return; 
-    }
-    
-    //output messages
-    for (int i = 0; i < messages.size(); ++i)
+
+    while (true)
     {
+      try
+      {
+        //get a page of messages to/from user, one more tells if there is a next page
+        messages = esql.getMessages(esql.username, after, PAGE_SIZE + 1);
+        //update unread messages to read
+        if (after == null)
+        {
+	        esql.markMessagesRead(esql.username);
+        }
+      }//end try
+      catch(Exception e)
+      {
+        System.err.println(e.getMessage());
+        return; 
+      }//end catch
 
-      List<String> sublist = messages.get(i);
-      if (sublist.isEmpty())
+      //if there are no messages
+      if (messages.isEmpty())
       {
-        continue;
+        getUserInputString(after == null ? "No Messages" : "No More Messages");
+        return; 
       }
-      //output index, timestamp, senderid, receiverid, read status, content
-      System.out.format("%-2d%-25s%-13s%-13s%-13s%-15s", i, sublist.get(4).trim(), sublist.get(1).trim(), sublist.get(2).trim(), sublist.get(6).trim(), sublist.get(3).trim()); 
-      System.out.println(); 
-    }
-    
-    //prompt for messages to delete
-    toDelete = getUserInputInt("Message to delete (Enter to Cancel): ", messages.size()-1);
+      more = messages.size() > PAGE_SIZE;
+      if (more)
+      {
+        messages = messages.subList(0, PAGE_SIZE);
+      }
+
+      //output messages
+      for (int i = 0; i < messages.size(); ++i)
+      {
+        Message m = messages.get(i);
+        //output index, timestamp, senderid, receiverid, read status, content
+        System.out.format("%-2d%-25s%-13s%-13s%-13s%-15s", i, m.getSendTime(), m.getSenderId(), m.getReceiverId(), m.getStatus(), m.getContents().trim()); 
+        System.out.println(); 
+      }
+
+      //prompt for messages to delete
+      toDelete = getUserInputIndex(more ? "Message to delete (n for Next Page, Enter to Cancel): "
+                                        : "Message to delete (Enter to Cancel): ", messages.size()-1, more);
+      if (toDelete != NEXT_PAGE)
+      {
+        break;
+      }
+      after = messages.get(messages.size() - 1);
+    }//end while
     if (toDelete < 0)
     {
       return;
     }
 
     message = messages.get(toDelete);
-    msgid = message.get(0).trim();
-    senderid = message.get(1).trim(); 
-    receiverid = message.get(2).trim(); 
-    deleteStatus = message.get(5).trim();
-    if (senderid.equals(esql.username))
-    {
-      newDeleteStatus = deleteStatus.equals("0") ? 1 
-                        : deleteStatus.equals("2") ? 3 
-                        : -1;
-    }
-    else if (receiverid.equals(esql.username))
-    {
-      newDeleteStatus = deleteStatus.equals("0") ? 2 
-                        : deleteStatus.equals("1") ? 3 
-                        : -1;
-    }
-    
-    System.out.println(newDeleteStatus);
-	  
-    if (newDeleteStatus == -1)
-    {
-      return; 
-    }
-
 	  try 
     {
-      sql = "UPDATE MESSAGE SET deleteStatus="+newDeleteStatus+" WHERE MESSAGE.msgId="+msgid;
-	    esql.executeUpdate(sql);
+	    esql.deleteMessage(esql.username, message);
     }
     catch(Exception e)
     {
@@ -1446,12 +1188,11 @@ public class ProfNetwork
   {
     try
     {
-      String query = "SELECT * FROM Catalog WHERE cost < ";
+      String query = "SELECT * FROM Catalog WHERE cost < ?";
       System.out.print("\tEnter cost: $");
       String input = in.readLine();
-      query += input;
 
-      int rowCount = esql.executeQuery(query);
+      int rowCount = esql.executeQuery(query, Double.valueOf(input.trim()));
       System.out.println ("total row(s): " + rowCount);
     }
     catch(Exception e)
@@ -1543,11 +1284,11 @@ public class ProfNetwork
     {
       String query = "SELECT C.cost, P.pname "
                     +"FROM Catalog C, Parts P "
-                    +"WHERE C.pid = P.pid AND C.cost < "; 
+                    +"WHERE C.pid = P.pid AND C.cost < ? "
+                    +"GROUP BY C.cost, P.pname"; 
       System.out.print("\tEnter cost: $");
       String input = in.readLine();
-      query += input + " GROUP BY C.cost, P.pname";
-      int rowCount = esql.executeQuery(query);
+      int rowCount = esql.executeQuery(query, Double.valueOf(input.trim()));
       System.out.println ("total row(s): " + rowCount);
     }
     catch(Exception e)
@@ -1564,11 +1305,10 @@ public class ProfNetwork
                     +"FROM Suppliers S, Parts P, Catalog C "
                     +"WHERE S.sid = C.sid "
                     +"      AND P.pid = C.pid "
-                    +"      AND P.pname = "; 
+                    +"      AND P.pname = ?"; 
        System.out.print("\tEnter part name: $");
        String input = in.readLine();
-       query += "'" + input + "'";
-       int rowCount = esql.executeQuery(query);
+       int rowCount = esql.executeQuery(query, input);
        System.out.println ("total row(s): " + rowCount);
     }
     catch(Exception e)
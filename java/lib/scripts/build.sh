@@ -0,0 +1,10 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Use the JDK in JAVA_HOME (11 or later), or the one on the PATH; mvn honours it too
+if [ -n "$JAVA_HOME" ]; then
+  export PATH=$JAVA_HOME/bin:$PATH
+fi
+
+# compile and test the profnetwork library and package it as lib/target/profnetwork.jar;
+# it needs no JDBC driver to build, the driver is picked at run time
+mvn -B -q -f "$DIR/../../pom.xml" -pl lib package || exit 1
@@ -0,0 +1,393 @@
+package profnetwork;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads rows into a single table in chunks instead of one autocommitted
+ * INSERT per row.  Each chunk is sent either through Postgres COPY FROM STDIN
+ * (when the JDBC driver exposes a CopyManager) or through a batched
+ * PreparedStatement, and committed as one transaction.  If a chunk fails it is
+ * rolled back and replayed row by row so that a bad row is reported and
+ * skipped exactly like the old per-row import did.  Each chunk is a
+ * profnetwork.ImportBatch flight recorder event (see Events).
+ *
+ * Tuning (system properties):
+ *   profnetwork.import.batchSize  rows per chunk/transaction (default 1000)
+ *   profnetwork.import.copy       use COPY when available (default true)
+ */
+public class BulkLoader
+{
+  public static final int DEFAULT_BATCH_SIZE =
+    Integer.getInteger("profnetwork.import.batchSize", 1000).intValue();
+  public static final boolean DEFAULT_USE_COPY =
+    !"false".equalsIgnoreCase(System.getProperty("profnetwork.import.copy"));
+
+  private final Connection _connection;
+  private final String table;
+  private final int numCols;
+  private final int batchSize;
+  private final String copySql;
+
+  private Object copyManager;     //org.postgresql.copy.CopyManager, if the driver has one
+  private Method copyIn;          //CopyManager.copyIn(String, Reader)
+  private PreparedStatement insert;
+  private boolean oldAutoCommit;
+
+  private final List<String[]> pending;
+  private long rowsRead = 0;
+  private long rowsLoaded = 0;
+  private long rowsSkipped = 0;
+  private long startNanos = 0;
+  private long elapsedNanos = 0;
+
+  /**
+  * Creates a loader using the default batch size and COPY setting
+  *
+  * @param connection the connection to load through
+  * @param table the destination table
+  * @param numCols number of columns in the destination table
+  * @throws java.sql.SQLException when the connection cannot be prepared
+  */
+  public BulkLoader(Connection connection, String table, int numCols) throws SQLException
+  {
+    this(connection, table, numCols, DEFAULT_BATCH_SIZE, DEFAULT_USE_COPY);
+  }
+
+  /**
+  * Creates a loader
+  *
+  * @param connection the connection to load through
+  * @param table the destination table
+  * @param numCols number of columns in the destination table
+  * @param batchSize number of rows sent and committed together
+  * @param useCopy try COPY FROM STDIN before falling back to batched INSERTs
+  * @throws java.sql.SQLException when the connection cannot be prepared
+  */
+  public BulkLoader(Connection connection, String table, int numCols, int batchSize, boolean useCopy) throws SQLException
+  {
+    this._connection = connection;
+    this.table = table;
+    this.numCols = numCols;
+    this.batchSize = Math.max(1, batchSize);
+    this.pending = new ArrayList<String[]>(this.batchSize);
+
+    this.copySql = "COPY " + table + " FROM STDIN";
+
+    if (useCopy)
+    {
+      findCopyManager();
+    }
+
+    this.oldAutoCommit = connection.getAutoCommit();
+    connection.setAutoCommit(false);
+    this.startNanos = System.nanoTime();
+  }//end BulkLoader
+
+  /**
+  * Queues one CSV row for loading.  Rows with too few fields are reported
+  * and skipped; extra trailing fields are ignored.  The array is kept until
+  * the chunk is sent, so callers must not reuse it.
+  *
+  * @param row the field values of the row
+  * @throws java.sql.SQLException when the connection itself fails
+  */
+  public void add(String[] row) throws SQLException
+  {
+    ++rowsRead;
+    if (row.length < numCols)
+    {
+      System.err.println("Skipping row " + rowsRead + " of " + table + ": expected "
+        + numCols + " fields but found " + row.length);
+      ++rowsSkipped;
+      return;
+    }
+    pending.add(row);
+
+    if (pending.size() >= batchSize)
+    {
+      flush();
+    }
+  }//end add
+
+  /**
+  * Loads any queued rows, restores the connection and stops the clock
+  *
+  * @throws java.sql.SQLException when the connection itself fails
+  */
+  public void finish() throws SQLException
+  {
+    try
+    {
+      flush();
+    }
+    finally
+    {
+      if (insert != null)
+      {
+        insert.close();
+        insert = null;
+      }
+      _connection.setAutoCommit(oldAutoCommit);
+      elapsedNanos = System.nanoTime() - startNanos;
+    }
+  }//end finish
+
+  /*
+  * Number rows from firstRow in error messages, for loaders fed one chunk of a file
+  */
+  public void setFirstRow(long firstRow)
+  {
+    this.rowsRead = firstRow - 1;
+  }
+
+  public long getRowsLoaded()
+  {
+    return rowsLoaded;
+  }
+
+  public long getRowsSkipped()
+  {
+    return rowsSkipped;
+  }
+
+  /*
+  * Return a one line summary (rows, time and throughput) of the load
+  */
+  public String getSummary()
+  {
+    return summary(table, rowsLoaded, rowsSkipped, elapsedNanos);
+  }
+
+  /*
+  * Format a load summary line with the rows/sec throughput
+  */
+  public static String summary(String table, long rowsLoaded, long rowsSkipped, long elapsedNanos)
+  {
+    double seconds = elapsedNanos / 1e9;
+    long rate = seconds > 0 ? (long) (rowsLoaded / seconds) : rowsLoaded;
+    return String.format("%s: %d rows loaded, %d skipped in %.2fs (%d rows/sec)",
+      table, rowsLoaded, rowsSkipped, seconds, rate);
+  }
+
+  /*
+  * Send the queued chunk as one transaction, replaying it row by row if it fails
+  */
+  private void flush() throws SQLException
+  {
+    if (pending.isEmpty())
+    {
+      return;
+    }
+
+    Events.ImportBatch event = new Events.ImportBatch();
+    event.begin();
+    long loadedBefore = rowsLoaded;
+    long skippedBefore = rowsSkipped;
+    boolean replayed = false;
+    try
+    {
+      if (copyManager != null)
+      {
+        copyChunk();
+      }
+      else
+      {
+        insertChunk();
+      }
+      _connection.commit();
+      rowsLoaded += pending.size();
+    }
+    catch (SQLException e)
+    {
+      _connection.rollback();
+      replayed = true;
+      insertRowByRow();
+    }
+    finally
+    {
+      event.end();
+      if (event.shouldCommit())
+      {
+        event.table = table;
+        event.method = copyManager != null ? "COPY" : "INSERT";
+        event.rows = pending.size();
+        event.loaded = (int) (rowsLoaded - loadedBefore);
+        event.skipped = (int) (rowsSkipped - skippedBefore);
+        event.replayed = replayed;
+        event.commit();
+      }
+    }
+    pending.clear();
+  }//end flush
+
+  private void insertChunk() throws SQLException
+  {
+    PreparedStatement stmt = getInsert();
+    for (String[] values : pending)
+    {
+      for (int i = 0; i < numCols; i++)
+      {
+        stmt.setString(i + 1, values[i]);
+      }
+      stmt.addBatch();
+    }
+    stmt.executeBatch();
+  }
+
+  private void copyChunk() throws SQLException
+  {
+    StringBuilder data = new StringBuilder(pending.size() * numCols * 16);
+    for (String[] values : pending)
+    {
+      for (int i = 0; i < numCols; i++)
+      {
+        if (i > 0)
+        {
+          data.append('\t');
+        }
+        appendCopyText(data, values[i]);
+      }
+      data.append('\n');
+    }
+
+    try
+    {
+      copyIn.invoke(copyManager, copySql, new StringReader(data.toString()));
+    }
+    catch (Exception e)
+    {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      if (cause instanceof SQLException)
+      {
+        throw (SQLException) cause;
+      }
+      throw new SQLException("COPY into " + table + " failed: " + cause);
+    }
+  }//end copyChunk
+
+  /*
+  * Old behaviour for a chunk that failed: one transaction per row, report and skip bad rows
+  */
+  private void insertRowByRow() throws SQLException
+  {
+    PreparedStatement stmt = getInsert();
+    stmt.clearBatch();
+    for (String[] values : pending)
+    {
+      try
+      {
+        for (int i = 0; i < numCols; i++)
+        {
+          stmt.setString(i + 1, values[i]);
+        }
+        stmt.executeUpdate();
+        _connection.commit();
+        ++rowsLoaded;
+      }//end try
+      catch (SQLException e)
+      {
+        _connection.rollback();
+        System.err.println(e.getMessage());
+        ++rowsSkipped;
+      }//end catch
+    }
+  }//end insertRowByRow
+
+  private PreparedStatement getInsert() throws SQLException
+  {
+    if (insert == null)
+    {
+      insert = _connection.prepareStatement(insertSql());
+    }
+    return insert;
+  }
+
+  /*
+  * Return the INSERT for a row of CSV text.  Every value is bound with
+  * setString, which a current pgjdbc sends as varchar; a non-text column
+  * (msgId, deleteStatus, sentAt, ...) would reject it, so its placeholder
+  * is cast to the column type the table reports.
+  */
+  private String insertSql() throws SQLException
+  {
+    StringBuilder sql = new StringBuilder("INSERT INTO " + table + " VALUES (");
+    Statement stmt = _connection.createStatement();
+    try
+    {
+      ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + " WHERE false");
+      ResultSetMetaData columns = rs.getMetaData();
+      for (int i = 1; i <= numCols; i++)
+      {
+        String type = i <= columns.getColumnCount() ? columns.getColumnTypeName(i) : "text";
+        // pgjdbc names a column with a sequence default serial, which is no type to cast to
+        type = type.equalsIgnoreCase("serial") ? "int4" : type.equalsIgnoreCase("bigserial") ? "int8" : type;
+        sql.append(i == 1 ? "" : ",");
+        sql.append(isText(type) ? "?" : "CAST(? AS " + type + ")");
+      }
+      rs.close();
+    }
+    finally
+    {
+      stmt.close();
+    }
+    return sql.append(")").toString();
+  }//end insertSql
+
+  private static boolean isText(String type)
+  {
+    return type.equalsIgnoreCase("text") || type.equalsIgnoreCase("varchar") || type.equalsIgnoreCase("bpchar");
+  }
+
+  /*
+  * Look up the CopyManager of newer Postgres drivers; older drivers (pg73jdbc3) have none
+  */
+  private void findCopyManager()
+  {
+    try
+    {
+      Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+      if (!pgConnection.isInstance(_connection))
+      {
+        return;
+      }
+      Object manager = pgConnection.getMethod("getCopyAPI").invoke(_connection);
+      this.copyIn = Class.forName("org.postgresql.copy.CopyManager")
+        .getMethod("copyIn", String.class, Reader.class);
+      this.copyManager = manager;
+    }
+    catch (Exception e)
+    {
+      this.copyManager = null;
+      this.copyIn = null;
+    }
+  }
+
+  /*
+  * Escape a value for the COPY text format
+  */
+  private static void appendCopyText(StringBuilder out, String value)
+  {
+    for (int i = 0; i < value.length(); i++)
+    {
+      char c = value.charAt(i);
+      switch (c)
+      {
+        case '\\': out.append("\\\\"); break;
+        case '\t': out.append("\\t"); break;
+        case '\n': out.append("\\n"); break;
+        case '\r': out.append("\\r"); break;
+        default: out.append(c); break;
+      }
+    }
+  }
+}//end BulkLoader
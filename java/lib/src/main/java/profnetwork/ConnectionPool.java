@@ -0,0 +1,398 @@
+package profnetwork;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small JDBC connection pool.  At most maxSize physical connections are
+ * open; borrowers wait up to maxWait for one to be returned.  Idle
+ * connections are reused most recently used first, validated on borrow when
+ * they have been idle for a while, and closed by a background thread once
+ * they have been idle longer than idleTimeout (never going below minSize).
+ * Every connection carries its own StatementCache.
+ *
+ * Tuning (system properties):
+ *   profnetwork.pool.minSize          connections kept open (default 1)
+ *   profnetwork.pool.maxSize          connections at most (default 8)
+ *   profnetwork.pool.maxWaitMs        borrow timeout (default 30000)
+ *   profnetwork.pool.idleTimeoutMs    close idle connections after (default 300000)
+ *   profnetwork.pool.validateAfterMs  validate on borrow when idle longer (default 5000)
+ */
+public class ConnectionPool
+{
+  public static final int DEFAULT_MIN_SIZE = Integer.getInteger("profnetwork.pool.minSize", 1).intValue();
+  public static final int DEFAULT_MAX_SIZE = Integer.getInteger("profnetwork.pool.maxSize", 8).intValue();
+  public static final long DEFAULT_MAX_WAIT_MS = Long.getLong("profnetwork.pool.maxWaitMs", 30000L).longValue();
+  public static final long DEFAULT_IDLE_TIMEOUT_MS = Long.getLong("profnetwork.pool.idleTimeoutMs", 300000L).longValue();
+  public static final long DEFAULT_VALIDATE_AFTER_MS = Long.getLong("profnetwork.pool.validateAfterMs", 5000L).longValue();
+
+  private static final String VALIDATION_QUERY = "SELECT 1";
+
+  /**
+   * A pooled physical connection and its prepared statements.  Hand it back
+   * with ConnectionPool.release; do not close the connection.
+   */
+  public static class Handle
+  {
+    private final Connection connection;
+    private final StatementCache statements;
+    private long lastUsed;
+
+    Handle(Connection connection)
+    {
+      this.connection = connection;
+      this.statements = new StatementCache(connection);
+      this.lastUsed = System.currentTimeMillis();
+    }
+
+    public Connection getConnection()
+    {
+      return connection;
+    }
+
+    public StatementCache getStatements()
+    {
+      return statements;
+    }
+  }//end Handle
+
+  private final String url;
+  private final String user;
+  private final String passwd;
+  private final int minSize;
+  private final int maxSize;
+  private final long maxWaitMs;
+  private final long idleTimeoutMs;
+  private final long validateAfterMs;
+
+  private final LinkedBlockingDeque<Handle> idle = new LinkedBlockingDeque<Handle>();
+  private final Set<Handle> open = Collections.newSetFromMap(new ConcurrentHashMap<Handle, Boolean>());
+  private final Semaphore permits;
+  private final ScheduledExecutorService evictor;
+  private volatile boolean closed = false;
+
+  // metrics
+  private final AtomicLong borrows = new AtomicLong();
+  private final AtomicLong waitNanos = new AtomicLong();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong created = new AtomicLong();
+  private final AtomicLong destroyed = new AtomicLong();
+  private final AtomicLong validationFailures = new AtomicLong();
+  private final AtomicLong retiredHits = new AtomicLong();
+  private final AtomicLong retiredMisses = new AtomicLong();
+  private final AtomicLong retiredEvictions = new AtomicLong();
+
+  /**
+  * Creates a pool with the default sizes and timeouts
+  *
+  * @param url the JDBC connection URL
+  * @param user the user name used to login to the database
+  * @param passwd the user login password
+  * @throws java.sql.SQLException when the initial connections cannot be opened
+  */
+  public ConnectionPool(String url, String user, String passwd) throws SQLException
+  {
+    this(url, user, passwd, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_MAX_WAIT_MS,
+      DEFAULT_IDLE_TIMEOUT_MS, DEFAULT_VALIDATE_AFTER_MS);
+  }
+
+  /**
+  * Creates a pool and opens its first minSize connections
+  *
+  * @throws java.sql.SQLException when the initial connections cannot be opened
+  */
+  public ConnectionPool(String url, String user, String passwd, int minSize, int maxSize,
+                        long maxWaitMs, long idleTimeoutMs, long validateAfterMs) throws SQLException
+  {
+    this.url = url;
+    this.user = user;
+    this.passwd = passwd;
+    this.maxSize = Math.max(1, maxSize);
+    this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+    this.maxWaitMs = maxWaitMs;
+    this.idleTimeoutMs = idleTimeoutMs;
+    this.validateAfterMs = validateAfterMs;
+    this.permits = new Semaphore(this.maxSize, true);
+
+    for (int i = 0; i < this.minSize; i++)
+    {
+      idle.offerLast(create());
+    }
+
+    this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "connection-pool-evictor");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    long period = Math.max(1000L, idleTimeoutMs / 2);
+    this.evictor.scheduleWithFixedDelay(new Runnable()
+    {
+      public void run()
+      {
+        evictIdle();
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }//end ConnectionPool
+
+  /**
+  * Borrows a connection, waiting up to maxWait for one to become free
+  *
+  * @return a validated connection handle
+  * @throws java.sql.SQLException when no connection could be obtained
+  */
+  public Handle borrow() throws SQLException
+  {
+    if (closed)
+    {
+      throw new SQLException("Connection pool is closed");
+    }
+
+    long start = System.nanoTime();
+    try
+    {
+      if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS))
+      {
+        timeouts.incrementAndGet();
+        throw new SQLException("Timed out after " + maxWaitMs + "ms waiting for a database connection");
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a database connection");
+    }
+    recordWait(System.nanoTime() - start);
+
+    try
+    {
+      Handle handle;
+      while ((handle = idle.pollFirst()) != null)
+      {
+        if (isUsable(handle))
+        {
+          return handle;
+        }
+        destroy(handle);
+      }
+      return create();
+    }
+    catch (SQLException e)
+    {
+      permits.release();
+      throw e;
+    }
+    catch (RuntimeException e)
+    {
+      permits.release();
+      throw e;
+    }
+  }//end borrow
+
+  /**
+  * Returns a borrowed connection to the pool.  An open transaction is
+  * rolled back; a broken connection is closed instead of reused.
+  *
+  * @param handle the handle obtained from borrow
+  */
+  public void release(Handle handle)
+  {
+    if (handle == null)
+    {
+      return;
+    }
+    try
+    {
+      boolean reusable = !closed;
+      try
+      {
+        if (reusable && !handle.connection.getAutoCommit())
+        {
+          handle.connection.rollback();
+          handle.connection.setAutoCommit(true);
+        }
+        reusable = reusable && !handle.connection.isClosed();
+      }
+      catch (SQLException e)
+      {
+        reusable = false;
+      }
+
+      if (reusable)
+      {
+        handle.lastUsed = System.currentTimeMillis();
+        idle.offerFirst(handle);
+      }
+      else
+      {
+        destroy(handle);
+      }
+    }
+    finally
+    {
+      permits.release();
+    }
+  }//end release
+
+  /*
+  * Close all idle connections and refuse further borrows; borrowed ones close on release
+  */
+  public void close()
+  {
+    closed = true;
+    evictor.shutdownNow();
+    Handle handle;
+    while ((handle = idle.pollFirst()) != null)
+    {
+      destroy(handle);
+    }
+  }
+
+  /*
+  * Return borrow, wait time and size counters of the pool
+  */
+  public String getStats()
+  {
+    long n = borrows.get();
+    return String.format("connection pool: %d borrows, avg wait %.3fms, max wait %.3fms, %d timeouts, "
+      + "%d open (%d idle), %d created, %d closed, %d failed validation",
+      n, n == 0 ? 0.0 : waitNanos.get() / 1e6 / n, maxWaitNanos.get() / 1e6, timeouts.get(),
+      open.size(), idle.size(), created.get(), destroyed.get(), validationFailures.get());
+  }
+
+  /*
+  * Return the number of connections the pool opens at most
+  */
+  public int getMaxSize()
+  {
+    return maxSize;
+  }
+
+  /*
+  * Return the number of borrows, i.e. round trips made through the SQL helpers
+  */
+  public long getBorrowCount()
+  {
+    return borrows.get();
+  }
+
+  /*
+  * Return the statement cache counters summed over all connections, past and present
+  */
+  public String getStatementStats()
+  {
+    long hits = retiredHits.get(), misses = retiredMisses.get(), evictions = retiredEvictions.get();
+    for (Handle handle : open)
+    {
+      hits += handle.statements.getHits();
+      misses += handle.statements.getMisses();
+      evictions += handle.statements.getEvictions();
+    }
+    long total = hits + misses;
+    return String.format("statement cache: %d hits, %d misses (%.1f%% hit ratio), %d evictions",
+      hits, misses, total == 0 ? 0.0 : 100.0 * hits / total, evictions);
+  }
+
+  private Handle create() throws SQLException
+  {
+    Handle handle = new Handle(DriverManager.getConnection(url, user, passwd));
+    created.incrementAndGet();
+    open.add(handle);
+    return handle;
+  }
+
+  private void destroy(Handle handle)
+  {
+    if (!open.remove(handle))
+    {
+      return;
+    }
+    destroyed.incrementAndGet();
+    retiredHits.addAndGet(handle.statements.getHits());
+    retiredMisses.addAndGet(handle.statements.getMisses());
+    retiredEvictions.addAndGet(handle.statements.getEvictions());
+    handle.statements.close();
+    try
+    {
+      handle.connection.close();
+    }
+    catch (SQLException e)
+    {
+      // ignored.
+    }
+  }
+
+  /*
+  * Check a connection taken from the idle list before handing it out
+  */
+  private boolean isUsable(Handle handle)
+  {
+    try
+    {
+      if (handle.connection.isClosed())
+      {
+        return false;
+      }
+      if (System.currentTimeMillis() - handle.lastUsed < validateAfterMs)
+      {
+        return true;
+      }
+      ResultSet rs = handle.statements.prepare(VALIDATION_QUERY).executeQuery();
+      rs.close();
+      return true;
+    }
+    catch (SQLException e)
+    {
+      validationFailures.incrementAndGet();
+      return false;
+    }
+  }//end isUsable
+
+  /*
+  * Close connections idle longer than idleTimeout, oldest first, keeping minSize open
+  */
+  private void evictIdle()
+  {
+    long now = System.currentTimeMillis();
+    while (open.size() > minSize)
+    {
+      Handle oldest = idle.pollLast();
+      if (oldest == null)
+      {
+        return;
+      }
+      if (now - oldest.lastUsed < idleTimeoutMs)
+      {
+        idle.offerLast(oldest);
+        return;
+      }
+      destroy(oldest);
+    }
+  }
+
+  private void recordWait(long nanos)
+  {
+    borrows.incrementAndGet();
+    waitNanos.addAndGet(nanos);
+    long max;
+    while (nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos))
+    {
+    }
+  }
+}//end ConnectionPool
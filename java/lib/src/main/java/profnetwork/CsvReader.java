@@ -0,0 +1,277 @@
+package profnetwork;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Streaming RFC-4180 CSV reader.  Records are read one at a time with a
+ * ResultSet style cursor, so memory use does not grow with the file size:
+ *
+ *   CsvReader csv = new CsvReader("data.csv");
+ *   while (csv.next())
+ *     ... csv.getString(0) ...
+ *
+ * The unescaped text of the current record is kept in one reusable char
+ * buffer and each field is a (start, length) view into it, so nothing is
+ * allocated per field unless getString or getRow is called.  Quoted fields
+ * may contain commas, doubled quotes and line breaks.  Blank lines are
+ * skipped.
+ */
+public class CsvReader implements Closeable
+{
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Reader in;
+  private final char[] buf = new char[BUFFER_SIZE];
+  private int pos = 0;
+  private int limit = 0;
+  private boolean started = false;
+
+  // unescaped text of the current record and the field boundaries inside it
+  private char[] record = new char[256];
+  private int recordLength = 0;
+  private int[] starts = new int[16];
+  private int[] ends = new int[16];
+  private int fieldCount = 0;
+  private long recordNumber = 0;
+
+  /**
+  * Opens a UTF-8 encoded CSV file
+  *
+  * @param csvFile path of the file
+  * @throws java.io.IOException when the file cannot be opened
+  */
+  public CsvReader(String csvFile) throws IOException
+  {
+    this(new InputStreamReader(new FileInputStream(csvFile), "UTF-8"));
+  }
+
+  public CsvReader(Reader in)
+  {
+    this.in = in;
+  }
+
+  /**
+  * Moves the cursor to the next record
+  *
+  * @return false when the end of the input is reached
+  * @throws java.io.IOException when reading fails
+  */
+  public boolean next() throws IOException
+  {
+    while (readRecord())
+    {
+      if (fieldCount > 1 || ends[0] > starts[0])
+      {
+        ++recordNumber;
+        return true;
+      }
+    }
+    fieldCount = 0;
+    return false;
+  }//end next
+
+  public int getFieldCount()
+  {
+    return fieldCount;
+  }
+
+  /*
+  * Return the 1-based number of the current record (blank lines not counted)
+  */
+  public long getRecordNumber()
+  {
+    return recordNumber;
+  }
+
+  /*
+  * Return field i (0-based) of the current record as a new String
+  */
+  public String getString(int i)
+  {
+    checkField(i);
+    return new String(record, starts[i], ends[i] - starts[i]);
+  }
+
+  /*
+  * Return all fields of the current record as new Strings
+  */
+  public String[] getRow()
+  {
+    String[] row = new String[fieldCount];
+    for (int i = 0; i < fieldCount; i++)
+    {
+      row[i] = new String(record, starts[i], ends[i] - starts[i]);
+    }
+    return row;
+  }
+
+  /*
+  * Return the buffer holding the current record; only valid until next()
+  */
+  public char[] getBuffer()
+  {
+    return record;
+  }
+
+  public int getFieldStart(int i)
+  {
+    checkField(i);
+    return starts[i];
+  }
+
+  public int getFieldLength(int i)
+  {
+    checkField(i);
+    return ends[i] - starts[i];
+  }
+
+  public void close() throws IOException
+  {
+    in.close();
+  }
+
+  private void checkField(int i)
+  {
+    if (i < 0 || i >= fieldCount)
+    {
+      throw new IndexOutOfBoundsException("Field " + i + " of record " + recordNumber
+        + " (record has " + fieldCount + " fields)");
+    }
+  }
+
+  /*
+  * Tokenize one physical record into the record buffer
+  */
+  private boolean readRecord() throws IOException
+  {
+    recordLength = 0;
+    fieldCount = 0;
+
+    int c = read();
+    if (c == -1)
+    {
+      return false;
+    }
+    startField();
+
+    boolean quoted = false;
+    while (true)
+    {
+      if (quoted)
+      {
+        if (c == -1)
+        {
+          // unterminated quote, keep what was read
+          endField();
+          return true;
+        }
+        if (c == '"')
+        {
+          c = read();
+          if (c != '"')
+          {
+            // closing quote, look at c again as unquoted input
+            quoted = false;
+            continue;
+          }
+        }
+        append((char) c);
+        c = read();
+        continue;
+      }
+
+      switch (c)
+      {
+        case -1:
+        case '\n':
+          endField();
+          return true;
+        case '\r':
+          endField();
+          if (read() != '\n' && pos > 0)
+          {
+            --pos;   // lone CR, give the character back
+          }
+          return true;
+        case ',':
+          endField();
+          startField();
+          break;
+        case '"':
+          if (recordLength == starts[fieldCount - 1])
+          {
+            quoted = true;
+          }
+          else
+          {
+            append('"');
+          }
+          break;
+        default:
+          append((char) c);
+          break;
+      }//end switch
+      c = read();
+    }//end while
+  }//end readRecord
+
+  private int read() throws IOException
+  {
+    if (pos == limit)
+    {
+      limit = in.read(buf, 0, buf.length);
+      pos = 0;
+      if (limit <= 0)
+      {
+        limit = 0;
+        return -1;
+      }
+      if (!started)
+      {
+        started = true;
+        if (buf[0] == '\uFEFF')
+        {
+          pos = 1;   // skip byte order mark
+          return read();
+        }
+      }
+    }
+    return buf[pos++];
+  }
+
+  private void append(char c)
+  {
+    if (recordLength == record.length)
+    {
+      char[] bigger = new char[record.length * 2];
+      System.arraycopy(record, 0, bigger, 0, recordLength);
+      record = bigger;
+    }
+    record[recordLength++] = c;
+  }
+
+  private void startField()
+  {
+    if (fieldCount == starts.length)
+    {
+      int[] biggerStarts = new int[starts.length * 2];
+      int[] biggerEnds = new int[ends.length * 2];
+      System.arraycopy(starts, 0, biggerStarts, 0, fieldCount);
+      System.arraycopy(ends, 0, biggerEnds, 0, fieldCount);
+      starts = biggerStarts;
+      ends = biggerEnds;
+    }
+    starts[fieldCount] = recordLength;
+    ends[fieldCount] = recordLength;
+    ++fieldCount;
+  }
+
+  private void endField()
+  {
+    ends[fieldCount - 1] = recordLength;
+  }
+}//end CsvReader
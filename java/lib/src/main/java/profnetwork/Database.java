@@ -0,0 +1,1531 @@
+package profnetwork;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Data access for the ProfNetwork schema: a pool of connections with cached
+ * prepared statements, the queries behind the users, friends and messages
+ * screens, the in-memory friendship graph and the CSV import.  One instance
+ * is shared by all threads; apart from the inbox and profile caches it
+ * keeps no per-user state.
+ *
+ * Tuning (system properties):
+ *   profnetwork.rangeCheck  search used by checkRange: memory, sql or java (default memory)
+ *   profnetwork.dataDir     directory holding the CSV files (default ../../data)
+ *   profnetwork.jdbcParams  options added to the connection URL, e.g.
+ *                           reWriteBatchedInserts=true with a current pgjdbc driver
+ *   profnetwork.fetchSize   rows the driver fetches at a time for a query (default 500)
+ *   profnetwork.inboxCache  keep the messages of each user in memory (default true)
+ *   profnetwork.profileCache  keep recently read profiles in memory (default true)
+ *   profnetwork.profileQuery  how a profile is read: json, union or separate (default json),
+ *                             see readProfile
+ *   profnetwork.metrics     time every statement by its template, see Metrics
+ *   profnetwork.slowQuery.thresholdMs  log statements slower than this, see SlowQueryLog
+ *   profnetwork.messages.windowDays  days of MESSAGE partitions a message page reads
+ *                             first (default 31), see getMessages
+ *
+ * Every statement is also a profnetwork.Sql flight recorder event, see Events.
+ */
+public class Database
+{
+  // graph search used for the friend request range check: memory, sql or java
+  public static final String RANGE_CHECK = System.getProperty("profnetwork.rangeCheck", "memory");
+
+  public static final String DATA_DIR = System.getProperty("profnetwork.dataDir", "../../data");
+
+  public static final String JDBC_PARAMS = System.getProperty("profnetwork.jdbcParams", "");
+
+  // rows fetched per round trip; the driver only honours it inside a transaction
+  public static final int FETCH_SIZE = Integer.getInteger("profnetwork.fetchSize", 500).intValue();
+
+  // a page of messages is first looked for in the sentAt window this long before its cursor
+  public static final long MESSAGE_WINDOW_MS =
+    Long.getLong("profnetwork.messages.windowDays", 31L).longValue() * 24 * 60 * 60 * 1000;
+
+  public static final boolean INBOX_CACHE = !"false".equalsIgnoreCase(System.getProperty("profnetwork.inboxCache"));
+
+  public static final boolean PROFILE_CACHE = !"false".equalsIgnoreCase(System.getProperty("profnetwork.profileCache"));
+
+  // profile fetch modes, see readProfile
+  public static final String PROFILE_JSON = "json";
+  public static final String PROFILE_UNION = "union";
+  public static final String PROFILE_SEPARATE = "separate";
+
+  public static final String PROFILE_QUERY = System.getProperty("profnetwork.profileQuery", PROFILE_JSON);
+
+  // a user's USR row with the WORK_EXPR and EDUCATIONAL_DETAILS rows aggregated into JSON arrays (Profile.JSON_MAPPER)
+  private static final String PROFILE_JSON_SQL =
+    "SELECT U.userId, U.password, U.email, U.name, U.dateOfBirth, "
+   +"(SELECT json_agg(json_build_array(W.company, W.role, W.location, W.startDate, W.endDate)) "
+    +"FROM WORK_EXPR W WHERE W.userId = U.userId), "
+   +"(SELECT json_agg(json_build_array(E.instituitionName, E.major, E.degree, E.startdate, E.enddate)) "
+    +"FROM EDUCATIONAL_DETAILS E WHERE E.userId = U.userId) "
+   +"FROM USR U WHERE U.userId=?";
+
+  // a user's USR row, WORK_EXPR rows and EDUCATIONAL_DETAILS rows in one result, told apart by the first column
+  private static final String PROFILE_UNION_SQL =
+    "SELECT 0, U.userId, U.password, U.email, U.name, U.dateOfBirth::text "
+   +"FROM USR U WHERE U.userId=? "
+   +"UNION ALL "
+   +"SELECT 1, W.company, W.role, W.location, W.startDate, W.endDate "
+   +"FROM WORK_EXPR W WHERE W.userId=? "
+   +"UNION ALL "
+   +"SELECT 2, E.instituitionName, E.major, E.degree, E.startdate, E.enddate "
+   +"FROM EDUCATIONAL_DETAILS E WHERE E.userId=? "
+   +"ORDER BY 1";
+
+  // statements whose parameters hold a password, never shown by the SlowQueryLog
+  private static final String CHECK_LOGIN_SQL = SlowQueryLog.secret(
+    "SELECT  USR.userId "
+   +"FROM USR  "
+   +"WHERE USR.userId = ? AND USR.password = ?");
+  private static final String CREATE_USER_SQL = SlowQueryLog.secret("INSERT INTO USR VALUES (?,?,?,?,?)");
+  private static final String CHANGE_PASSWORD_SQL = SlowQueryLog.secret("UPDATE USR SET password = ? WHERE USR.userId = ?");
+
+  // reads every column of a row as a string, see executeQueryAndReturnResult
+  private static final RowMapper<List<String>> RECORD = new RowMapper<List<String>>()
+    {
+      public List<String> map(ResultSet rs) throws SQLException
+      {
+        int numCol = rs.getMetaData ().getColumnCount ();
+        List<String> record = new ArrayList<String>(numCol);
+        for (int i=1; i<=numCol; ++i)
+          record.add(rs.getString (i));
+        return record;
+      }
+    };
+
+  // sentAt of messages without a readable sendTime
+  static final Timestamp UNKNOWN_SENT_AT = Timestamp.valueOf("1970-01-01 00:00:00");
+
+  // CSV files and the tables they are loaded into
+  public static final ImportScheduler.Table USR_CSV =
+    new ImportScheduler.Table("USR", DATA_DIR + "/USR-Table 1.csv", 5);
+
+  // moves the months of the MESSAGE_DEFAULT rows into partitions of their own, see message_partitions.sql;
+  // rows without a readable sendTime have the epoch and stay
+  private static final String MESSAGE_PARTITIONS_SQL =
+    "SELECT message_add_partitions(min(D.sentAt)::date, max(D.sentAt)::date) "
+   +"FROM MESSAGE_DEFAULT D WHERE D.sentAt > '1970-01-01'";
+
+  public static final ImportScheduler.Table MESSAGE_CSV =
+    new ImportScheduler.Table("MESSAGE", DATA_DIR + "/Message-Table 1.csv", 8, "USR")
+    {
+      public String[] transform(String[] message)
+      {
+        if (message.length == 7)
+        {
+          // sentAt, the partition key, from sendTime; unknown times go to the default partition
+          Timestamp sentAt = Message.sentAt(message[4]);
+          message = Arrays.copyOf(message, 8);
+          message[7] = (sentAt == null ? UNKNOWN_SENT_AT : sentAt).toString();
+        }
+        if (message.length > 6)
+        {
+          String status = message[6];
+          if (status.equals("Delivered") || status.equals("Sent") || status.equals("Draft"))
+          {
+            message[6] = "UNREAD";
+          }
+          else if (status.equals("Read"))
+          {
+            message[6] = "READ";
+          }
+        }
+        return message;
+      }
+    };
+
+  public static final ImportScheduler.Table CONNECTION_CSV =
+    new ImportScheduler.Table("CONNECTION_USR", DATA_DIR + "/Connection-Table 1.csv", 3, "USR")
+    {
+      public String[] transform(String[] connection)
+      {
+        if (connection.length > 2)
+        {
+          connection[2] = connection[2].toUpperCase();
+        }
+        return connection;
+      }
+    };
+
+  public static final ImportScheduler.Table WORK_EXPR_CSV =
+    new ImportScheduler.Table("WORK_EXPR", DATA_DIR + "/Work_Ex-Table 1.csv", 6, "USR");
+
+  public static final ImportScheduler.Table EDUCATIONAL_DETAILS_CSV =
+    new ImportScheduler.Table("EDUCATIONAL_DETAILS", DATA_DIR + "/Edu_Det-Table 1.csv", 6, "USR");
+
+  // pool of physical database connections, each with its prepared statements.
+  private ConnectionPool _pool = null;
+
+  // in-memory index of accepted friendships, null when not loaded
+  private volatile FriendGraph _friends = null;
+
+  // in-memory trigram index of user names, null when not loaded
+  private volatile NameIndex _names = null;
+
+  // msgIds reserved from the msg sequence a block at a time
+  private IdAllocator _msgIds = null;
+
+  // messages of the users who read them lately, null when disabled
+  private InboxCache _inbox = null;
+
+  // profiles read lately, null when disabled
+  private ProfileCache _profiles = null;
+
+  // write-behind queue of new messages, started by the first queueMessage
+  private volatile MessageQueue _outbox = null;
+
+  /**
+  * Opens a database
+  *
+  * @param url the JDBC connection URL
+  * @param user the user name used to login to the database
+  * @param passwd the user login password
+  * @throws java.sql.SQLException when failed to make a connection.
+  */
+  public Database(String url, String user, String passwd) throws SQLException
+  {
+    connect(url, user, passwd);
+  }
+
+  /*
+  * For subclasses that connect later, see connect
+  */
+  protected Database()
+  {
+  }
+
+  /*
+  * Return the connection URL of a database on this machine, with the profnetwork.jdbcParams options
+  */
+  public static String url(String dbname, String dbport)
+  {
+    String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+    return JDBC_PARAMS.isEmpty() ? url : url + "?" + JDBC_PARAMS;
+  }
+
+  /**
+  * Creates the connection pool
+  *
+  * @throws java.sql.SQLException when failed to make a connection.
+  */
+  protected void connect(String url, String user, String passwd) throws SQLException
+  {
+    this._pool = new ConnectionPool(url, user, passwd);
+    this._msgIds = new IdAllocator(this._pool, "msg");
+    this._inbox = INBOX_CACHE ? new InboxCache(this) : null;
+    this._profiles = PROFILE_CACHE ? new ProfileCache(this) : null;
+  }
+
+  //=====================================================================================================
+  //==============BEGIN HELPER FUNCTIONS (SQL)===========================================================
+
+  /**
+  * Method to execute an update SQL statement.  Update SQL instructions
+  * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+  *
+  * @param sql the input SQL string, with ? for each parameter
+  * @param params values bound to the ? placeholders, in order
+  * @return the number of rows changed
+  * @throws java.sql.SQLException when update failed
+  */
+  public int executeUpdate (String sql, Object... params) throws SQLException
+  {
+    Events.Sql event = begin ();
+    boolean failed = true;
+    int rowCount = -1;
+    ConnectionPool.Handle conn = this._pool.borrow ();
+    try
+    {
+      // gets the cached statement object and binds the parameters
+      PreparedStatement stmt = prepare (conn, sql, params);
+
+      // issues the update instruction
+      rowCount = stmt.executeUpdate ();
+      failed = false;
+      return rowCount;
+    }
+    finally
+    {
+      this._pool.release (conn);
+      end (sql, params, event, rowCount, failed);
+    }
+  }//end executeUpdate
+
+  /**
+  * Method to execute an input query SQL instruction (i.e. SELECT).  This
+  * method issues the query to the DBMS and counts the rows returned.  Every
+  * row crosses the wire; to test for or count matching rows use exists or
+  * count, which leave the work to the server.
+  *
+  * @param query the input query string, with ? for each parameter
+  * @param params values bound to the ? placeholders, in order
+  * @return the number of rows returned
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public int executeQuery (String query, Object... params) throws SQLException
+  {
+    Events.Sql event = begin ();
+    boolean failed = true;
+    int rowCount = -1;
+    ConnectionPool.Handle conn = this._pool.borrow ();
+    try
+    {
+      // gets the cached statement object and binds the parameters
+      PreparedStatement stmt = prepare (conn, query, params);
+
+      // issues the query instruction
+      ResultSet rs = stmt.executeQuery ();
+      rowCount = 0;
+
+      // iterates through the result set and counts the rows.
+      try
+      {
+        while (rs.next())
+        {
+          ++rowCount;
+        }//end while
+      }
+      finally
+      {
+        rs.close ();
+      }
+      failed = false;
+      return rowCount;
+    }
+    finally
+    {
+      this._pool.release (conn);
+      end (query, params, event, rowCount, failed);
+    }
+  }//end executeQuery
+
+  /**
+  * Method to execute one update SQL statement with several sets of
+  * parameters, sent to the DBMS together as a batch.
+  *
+  * @param sql the input SQL string, with ? for each parameter
+  * @param rows the values bound to the ? placeholders, one array per execution
+  * @return the number of rows changed by each execution
+  * @throws java.sql.SQLException when update failed
+  */
+  public int[] executeBatch (String sql, List<Object[]> rows) throws SQLException
+  {
+    Events.Sql event = begin ();
+    boolean failed = true;
+    int rowCount = -1;
+    ConnectionPool.Handle conn = this._pool.borrow ();
+    try
+    {
+      PreparedStatement stmt = conn.getStatements().prepare (sql);
+      for (Object[] params : rows)
+      {
+        bind (stmt, params);
+        stmt.addBatch ();
+      }
+      int[] rowCounts = stmt.executeBatch ();
+      rowCount = 0;
+      for (int n : rowCounts)
+      {
+        rowCount += Math.max (0, n);
+      }
+      failed = false;
+      return rowCounts;
+    }
+    finally
+    {
+      this._pool.release (conn);
+      end (sql, rows.isEmpty () ? null : rows.get (0), event, rowCount, failed);
+    }
+  }//end executeBatch
+
+  /**
+  * Returns if a query has at least one row.  The query runs on the server
+  * as SELECT EXISTS (query), which stops at the first row and sends back a
+  * single boolean.
+  *
+  * @param query the input query string, with ? for each parameter
+  * @param params values bound to the ? placeholders, in order
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public boolean exists (String query, Object... params) throws SQLException
+  {
+    return queryForLong ("SELECT CASE WHEN EXISTS (" + query + ") THEN 1 ELSE 0 END", params) != 0;
+  }
+
+  /**
+  * Returns the number of rows of a query.  The rows are counted on the
+  * server, only the count is sent back.
+  *
+  * @param query the input query string, with ? for each parameter
+  * @param params values bound to the ? placeholders, in order
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public long count (String query, Object... params) throws SQLException
+  {
+    return queryForLong ("SELECT count(*) FROM (" + query + ") AS counted", params);
+  }
+
+  /**
+  * Returns the first column of the first row of a query as a number, 0 if
+  * there is no row or the value is NULL
+  *
+  * @param query the input query string, with ? for each parameter
+  * @param params values bound to the ? placeholders, in order
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public long queryForLong (String query, Object... params) throws SQLException
+  {
+    Events.Sql event = begin ();
+    boolean failed = true;
+    int rowCount = -1;
+    ConnectionPool.Handle conn = this._pool.borrow ();
+    try
+    {
+      ResultSet rs = prepare (conn, query, params).executeQuery ();
+      try
+      {
+        rowCount = rs.next () ? 1 : 0;
+        long value = rowCount == 1 ? rs.getLong (1) : 0;
+        failed = false;
+        return value;
+      }
+      finally
+      {
+        rs.close ();
+      }
+    }
+    finally
+    {
+      this._pool.release (conn);
+      end (query, params, event, rowCount, failed);
+    }
+  }//end queryForLong
+
+  /**
+  * Returns the first row of a query mapped to an object, null if there is
+  * no row.  Like queryForLong it runs as a single statement, without the
+  * transaction forEach opens for its cursor.
+  *
+  * @param query the input query string, with ? for each parameter
+  * @param mapper turns the row into an object
+  * @param params values bound to the ? placeholders, in order
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public <T> T queryForObject (String query, RowMapper<T> mapper, Object... params) throws SQLException
+  {
+    Events.Sql event = begin ();
+    boolean failed = true;
+    int rowCount = -1;
+    ConnectionPool.Handle conn = this._pool.borrow ();
+    try
+    {
+      ResultSet rs = prepare (conn, query, params).executeQuery ();
+      try
+      {
+        rowCount = rs.next () ? 1 : 0;
+        T row = rowCount == 1 ? mapper.map (rs) : null;
+        failed = false;
+        return row;
+      }
+      finally
+      {
+        rs.close ();
+      }
+    }
+    finally
+    {
+      this._pool.release (conn);
+      end (query, params, event, rowCount, failed);
+    }
+  }//end queryForObject
+
+  /**
+   * Method to execute an input query SQL instruction (i.e. SELECT).  This
+   * method issues the query to the DBMS and returns the results as
+   * a list of records. Each record in turn is a list of attribute values.
+   * The whole result is kept in memory; use queryForList with a LIMIT or
+   * forEach for results that can grow large.
+   *
+   * @param query the input query string, with ? for each parameter
+   * @param params values bound to the ? placeholders, in order
+   * @return the query result as a list of records
+   * @throws java.sql.SQLException when failed to execute the query
+   */
+  public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException
+  {
+    return queryForList (query, RECORD, params);
+  }//end executeQueryAndReturnResult
+
+  /**
+   * Method to execute an input query SQL instruction (i.e. SELECT) and map
+   * each row returned to an object.
+   *
+   * @param query the input query string, with ? for each parameter
+   * @param mapper turns a row into an object
+   * @param params values bound to the ? placeholders, in order
+   * @return the mapped rows, in order
+   * @throws java.sql.SQLException when failed to execute the query
+   */
+  public <T> List<T> queryForList (String query, final RowMapper<T> mapper, Object... params) throws SQLException
+  {
+    final List<T> result = new ArrayList<T>();
+    forEach (query, new RowHandler()
+      {
+        public boolean handle(ResultSet rs) throws SQLException
+        {
+          result.add(mapper.map(rs));
+          return true;
+        }
+      }, params);
+    return result;
+  }//end queryForList
+
+  /**
+   * Method to execute an input query SQL instruction (i.e. SELECT) and hand
+   * the rows to a handler as they arrive.  The query runs in a read-only
+   * transaction so that the driver uses a cursor and holds at most
+   * FETCH_SIZE rows at a time, however large the result.
+   *
+   * @param query the input query string, with ? for each parameter
+   * @param handler receives each row; returning false stops the query
+   * @param params values bound to the ? placeholders, in order
+   * @return the number of rows handed to the handler
+   * @throws java.sql.SQLException when failed to execute the query
+   */
+  public int forEach (String query, RowHandler handler, Object... params) throws SQLException
+  {
+    Events.Sql event = begin ();
+    boolean failed = true;
+    int rowCount = -1;
+    ConnectionPool.Handle conn = this._pool.borrow ();
+    try
+    {
+      // the pool rolls back and restores auto-commit on release
+      conn.getConnection().setAutoCommit (false);
+
+      // gets the cached statement object and binds the parameters
+      PreparedStatement stmt = prepare (conn, query, params);
+      stmt.setFetchSize (FETCH_SIZE);
+
+      // issues the query instruction
+      ResultSet rs = stmt.executeQuery ();
+      rowCount = 0;
+      try
+      {
+        while (rs.next())
+        {
+          ++rowCount;
+          if (!handler.handle(rs))
+          {
+            break;
+          }
+        }//end while
+      }
+      finally
+      {
+        rs.close ();
+      }
+      failed = false;
+      return rowCount;
+    }
+    finally
+    {
+      this._pool.release (conn);
+      end (query, params, event, rowCount, failed);
+    }
+  }//end forEach
+
+  /**
+   * Method to fetch the next value from sequence. This
+   * method issues the query to the DBMS and returns the next
+   * value of sequence used for autogenerated keys.  Costs a round trip per
+   * value; msgIds come from an IdAllocator instead (see sendMessage).
+   *
+   * @param sequence name of the DB sequence
+   * @return next value of a sequence
+   * @throws java.sql.SQLException when failed to execute the query
+   */
+  public int getCurrSeqVal(String sequence) throws SQLException
+  {
+    long value = queryForLong ("SELECT nextval(?)", sequence);
+    return value == 0 ? -1 : (int) value;
+  }
+
+  /*
+  * Start the flight recorder event of a statement, with its start time when
+  * statements are timed (metrics or the slow query log)
+  */
+  private static Events.Sql begin ()
+  {
+    Events.Sql event = new Events.Sql ();
+    event.startNanos = Metrics.ENABLED || SlowQueryLog.ENABLED ? System.nanoTime () : 0;
+    event.begin ();
+    return event;
+  }
+
+  /**
+  * Records a statement started with begin in the flight recorder, in the
+  * metrics, by its template, and in the slow query log
+  *
+  * @param rowCount rows returned or changed, -1 when not known
+  * @param failed whether the statement ended with an error
+  */
+  private void end (String sql, Object[] params, Events.Sql event, int rowCount, boolean failed)
+  {
+    event.finish (sql, rowCount, failed);
+    if (event.startNanos == 0)
+    {
+      return;
+    }
+    long nanos = System.nanoTime () - event.startNanos;
+    Metrics.record (Metrics.SQL, sql, nanos, failed);
+    SlowQueryLog.check (this._pool, sql, params, rowCount, nanos, failed);
+  }
+
+  /**
+  * Returns the cached prepared statement for a SQL template with the
+  * parameters bound.  Statements stay open in the connection's cache so
+  * the server only plans each template once; callers must not close them.
+  *
+  * @param conn the borrowed connection
+  * @param sql the SQL template
+  * @param params values bound to the ? placeholders, in order
+  * @return the prepared statement
+  * @throws java.sql.SQLException when the statement cannot be prepared
+  */
+  static PreparedStatement prepare (ConnectionPool.Handle conn, String sql, Object... params) throws SQLException
+  {
+    PreparedStatement stmt = conn.getStatements().prepare (sql);
+    bind (stmt, params);
+    return stmt;
+  }//end prepare
+
+  /*
+  * Bind values to the ? placeholders of a statement, in order
+  */
+  static void bind (PreparedStatement stmt, Object... params) throws SQLException
+  {
+    for (int i = 0; i < params.length; ++i)
+    {
+      Object param = params[i];
+      if (param instanceof String)
+        stmt.setString (i+1, (String) param);
+      else if (param instanceof Integer)
+        stmt.setInt (i+1, ((Integer) param).intValue());
+      else if (param instanceof Timestamp)
+        stmt.setTimestamp (i+1, (Timestamp) param);
+      else if (param == null)
+        stmt.setNull (i+1, Types.VARCHAR);
+      else
+        stmt.setObject (i+1, param);
+    }
+  }//end bind
+
+  /*
+  * Return the connection pool counters and the hit/miss counters of the prepared statement caches
+  */
+  public String getStats()
+  {
+    MessageQueue outbox = _outbox;
+    return this._pool.getStats() + "\n" + this._pool.getStatementStats() + "\n" + this._msgIds.getStats()
+      + (_inbox == null ? "" : "\n" + _inbox.getStats())
+      + (_profiles == null ? "" : "\n" + _profiles.getStats())
+      + (outbox == null ? "" : "\n" + outbox.getStats());
+  }
+
+  /*
+  * Return the connection pool
+  */
+  public ConnectionPool getPool()
+  {
+    return this._pool;
+  }
+
+  /**
+  * Method to close the physical connections if they are open.
+  */
+  public void cleanup()
+  {
+    MessageQueue outbox = _outbox;
+    if (outbox != null)
+    {
+      try
+      {
+        // store the queued messages while the pool is still open
+        outbox.close ();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }//end if
+    if (this._pool != null)
+    {
+      this._pool.close ();
+    }//end if
+  }//end cleanup
+
+  //==============END: HELPER FUNCTIONS (SQL)============================================================
+  //=====================================================================================================
+  //==============BEGIN: IMPORT==========================================================================
+
+  /**
+  * Loads CSV files into their tables; tables that only depend on tables
+  * loaded earlier (or not in the list) load in parallel
+  *
+  * @param tables the files to load, e.g. USR_CSV
+  * @throws java.lang.InterruptedException when interrupted while waiting for the import
+  */
+  public void importTables(ImportScheduler.Table... tables) throws InterruptedException
+  {
+    ImportScheduler scheduler = new ImportScheduler(this);
+    for (ImportScheduler.Table table : tables)
+    {
+      scheduler.add(table);
+    }
+    try
+    {
+      scheduler.run();
+    }
+    finally
+    {
+      for (ImportScheduler.Table table : tables)
+      {
+        if (table == MESSAGE_CSV)
+        {
+          partitionImportedMessages();
+        }
+      }
+      if (_profiles != null)
+      {
+        _profiles.invalidateAll();
+      }
+      // imported messages are older than the inbox syncs look back
+      if (_inbox != null)
+      {
+        _inbox.invalidateAll();
+      }
+    }
+  }
+
+  /*
+  * Create the MESSAGE partitions for the months of imported messages, which land in MESSAGE_DEFAULT
+  */
+  private void partitionImportedMessages()
+  {
+    try
+    {
+      queryForLong(MESSAGE_PARTITIONS_SQL);
+    }
+    catch (SQLException e)
+    {
+      System.err.println("Could not partition the imported messages: " + e.getMessage());
+    }
+  }
+
+  //==============END: IMPORT============================================================================
+  //=====================================================================================================
+  //==============BEGIN: USERS===========================================================================
+
+  /*
+  * Return if username exists
+  */
+  public boolean isUser(String username)
+  {
+    try
+    { // See if username exists
+      String query =
+        "SELECT  USR.userId "
+        +"FROM USR  "
+        +"WHERE USR.userId = ?";
+
+      return exists(query, username);
+    }
+    catch(Exception e)
+    {
+      //System.err.println(e.getMessage());
+    }
+    return false;
+  }
+
+  /**
+  * Returns if the username and password combination exists
+  *
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public boolean checkLogin(String username, String password) throws SQLException
+  {
+    return exists(CHECK_LOGIN_SQL, username, password);
+  }
+
+  /**
+  * Returns the account of a user
+  *
+  * @param username the user to load
+  * @return userId, password, email, name and dateOfBirth, or null when there is no such user
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public List<String> getUser(String username) throws SQLException
+  {
+    String query =
+      "SELECT  userId, password, email, name, dateOfBirth "
+      +"FROM USR "
+      +"WHERE userId = ?";
+    List<List<String>> result = executeQueryAndReturnResult (query, username);
+    return result.isEmpty() ? null : result.get(0);
+  }
+
+  /**
+  * Creates an account and adds it to the friendship graph and the name index
+  *
+  * @throws java.sql.SQLException when the account cannot be inserted
+  */
+  public void createUser(String username, String password, String email, String name, String dob) throws SQLException
+  {
+    executeUpdate(CREATE_USER_SQL, username, password, email, name, dob);
+    FriendGraph graph = _friends;
+    if (graph != null)
+    {
+      graph.addUser(username, name);
+    }
+    NameIndex names = _names;
+    if (names != null)
+    {
+      names.addUser(username, name);
+    }
+  }
+
+  /**
+  * @throws java.sql.SQLException when the password cannot be updated
+  */
+  public void changePassword(String username, String password) throws SQLException
+  {
+    executeUpdate(CHANGE_PASSWORD_SQL, password, username);
+    if (_profiles != null)
+    {
+      _profiles.invalidate(username);
+    }
+  }
+
+  /**
+  * Returns the profile of a user, from the profile cache when it is enabled
+  *
+  * @return the profile, or null when there is no such user
+  * @throws java.sql.SQLException when failed to read the profile
+  */
+  public Profile getUserProfile(String username) throws SQLException
+  {
+    return _profiles != null ? _profiles.get(username) : readProfile(username);
+  }
+
+  /**
+  * Reads the profile of a user from the database the way
+  * profnetwork.profileQuery selects
+  *
+  * @return the profile, or null when there is no such user
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public Profile readProfile(String username) throws SQLException
+  {
+    return readProfile(username, PROFILE_QUERY);
+  }
+
+  /**
+  * Reads the profile of a user from the database.  The modes:
+  *   json      one statement; the work experience and education rows are
+  *             aggregated on the server with json_agg (Postgres 9.4 or later)
+  *   union     one statement; the rows of the three tables come back as one
+  *             UNION ALL result
+  *   separate  one query per table, three round trips
+  *
+  * @param mode PROFILE_JSON, PROFILE_UNION or PROFILE_SEPARATE
+  * @return the profile, or null when there is no such user
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public Profile readProfile(String username, String mode) throws SQLException
+  {
+    if (PROFILE_JSON.equals(mode))
+    {
+      return queryForObject(PROFILE_JSON_SQL, Profile.JSON_MAPPER, username);
+    }
+    if (PROFILE_SEPARATE.equals(mode))
+    {
+      List<List<String>> user = getProfile(username);
+      if (user.isEmpty())
+      {
+        return null;
+      }
+      List<Profile.Work> work = new ArrayList<Profile.Work>();
+      for (List<String> w : getWorkExperience(username))
+      {
+        work.add(new Profile.Work(w.get(1), w.get(2), w.get(3), w.get(4), w.get(5)));
+      }
+      List<Profile.Education> education = new ArrayList<Profile.Education>();
+      for (List<String> e : getEducation(username))
+      {
+        education.add(new Profile.Education(e.get(1), e.get(2), e.get(3), e.get(4), e.get(5)));
+      }
+      List<String> u = user.get(0);
+      return new Profile(u.get(0), u.get(1), u.get(2), u.get(3), u.get(4), work, education);
+    }
+    if (!PROFILE_UNION.equals(mode))
+    {
+      throw new IllegalArgumentException("Unknown profile query: " + mode);
+    }
+
+    final String[] user = new String[5];
+    final List<Profile.Work> work = new ArrayList<Profile.Work>();
+    final List<Profile.Education> education = new ArrayList<Profile.Education>();
+    forEach(PROFILE_UNION_SQL, new RowHandler()
+      {
+        public boolean handle(ResultSet rs) throws SQLException
+        {
+          switch (rs.getInt(1))
+          {
+            case 0:
+              for (int i = 0; i < user.length; i++)
+              {
+                user[i] = rs.getString(i + 2);
+              }
+              break;
+            case 1:
+              work.add(new Profile.Work(rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6)));
+              break;
+            default:
+              education.add(new Profile.Education(rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6)));
+              break;
+          }
+          return true;
+        }
+      }, username, username, username);
+    if (user[0] == null)
+    {
+      return null;
+    }
+    return new Profile(user[0], user[1], user[2], user[3], user[4], work, education);
+  }//end readProfile
+
+  /**
+  * Returns the users whose name contains a string, ignoring case
+  *
+  * @return userId and name of each user found
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public List<List<String>> searchByName(String name) throws SQLException
+  {
+    return executeQueryAndReturnResult("SELECT userId, name FROM USR WHERE name ILIKE ? ESCAPE '\\'", contains(name));
+  }
+
+  /*
+  * Return an ILIKE pattern for names containing text, its % _ and \ taken literally as NameIndex does
+  */
+  static String contains(String text)
+  {
+    return "%" + text.trim().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+  }
+
+  /**
+  * Returns one page of the users whose name contains a string, ignoring
+  * case.  With the name index loaded the matches are ranked (see
+  * NameIndex) and the next page is cut from the matches the previous one
+  * keeps; otherwise they are ordered by name and the next page starts
+  * after the (name, userId) of the last match, so the database never skips
+  * over the earlier pages.  Both take % and _ in the name literally.
+  *
+  * @param after the previous page, null for the first one
+  * @param limit maximum number of matches returned
+  * @return the page of matches and the total number of matches
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public NameIndex.Page searchByName(String name, NameIndex.Page after, int limit) throws SQLException
+  {
+    NameIndex names = _names;
+    if (names != null)
+    {
+      return names.search(name, false, after, limit);
+    }
+    int offset = after == null ? 0 : after.getOffset() + after.size();
+    if (after != null && after.size() == 0)
+    {
+      return after;
+    }
+
+    final List<String> userIds = new ArrayList<String>();
+    final List<String> userNames = new ArrayList<String>();
+    final int[] total = { after == null ? 0 : after.getTotal() };
+    final boolean counted = after == null;
+    RowHandler page = new RowHandler()
+      {
+        public boolean handle(ResultSet rs) throws SQLException
+        {
+          userIds.add(rs.getString(1).trim());
+          userNames.add(rs.getString(2));
+          if (counted)
+          {
+            total[0] = rs.getInt(3);
+          }
+          return true;
+        }
+      };
+    if (after == null)
+    {
+      // the window count is taken before the LIMIT: all matches
+      forEach("SELECT userId, name, count(*) OVER () FROM USR WHERE name ILIKE ? ESCAPE '\\' ORDER BY name, userId LIMIT ?",
+        page, contains(name), limit);
+    }
+    else
+    {
+      int last = after.size() - 1;
+      forEach("SELECT userId, name FROM USR WHERE name ILIKE ? ESCAPE '\\' AND (name, userId) > (?, ?) "
+             +"ORDER BY name, userId LIMIT ?",
+        page, contains(name), after.getName(last), after.getUserId(last), limit);
+    }
+    return new NameIndex.Page(total[0], offset, userIds.toArray(new String[0]), userNames.toArray(new String[0]));
+  }
+
+  /**
+  * @return the USR rows of a user, at most one
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public List<List<String>> getProfile(String username) throws SQLException
+  {
+    String sql = "SELECT * "
+                +"FROM   USR U "
+                +"WHERE  U.userId=?";
+    return executeQueryAndReturnResult(sql, username);
+  }
+
+  /**
+  * @return the WORK_EXPR rows of a user
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public List<List<String>> getWorkExperience(String username) throws SQLException
+  {
+    String sql = "SELECT * "
+                +"FROM WORK_EXPR W "
+                +"WHERE W.userId=?";
+    return executeQueryAndReturnResult(sql, username);
+  }
+
+  /**
+  * @return the EDUCATIONAL_DETAILS rows of a user
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public List<List<String>> getEducation(String username) throws SQLException
+  {
+    String sql = "SELECT * "
+                +"FROM EDUCATIONAL_DETAILS E "
+                +"WHERE E.userId=?";
+    return executeQueryAndReturnResult(sql, username);
+  }
+
+  //==============END: USERS=============================================================================
+  //=====================================================================================================
+  //==============BEGIN: FRIENDS=========================================================================
+
+  /**
+  * Loads the accepted friendships into memory.  Friend lists, friend
+  * counts and the range check are answered from the graph afterwards.
+  *
+  * @return the loaded graph
+  * @throws java.sql.SQLException when failed to read the connections
+  */
+  public FriendGraph loadFriendGraph() throws SQLException
+  {
+    this._friends = FriendGraph.load(this);
+    return this._friends;
+  }
+
+  /*
+  * Return the in-memory friendship graph, or null when it is not loaded
+  */
+  public FriendGraph getFriendGraph()
+  {
+    return this._friends;
+  }
+
+  /**
+  * Loads the user names into an in-memory trigram index.  Name searches
+  * are answered from the index afterwards.
+  *
+  * @return the loaded index
+  * @throws java.sql.SQLException when failed to read the users
+  */
+  public NameIndex loadNameIndex() throws SQLException
+  {
+    this._names = NameIndex.load(this);
+    return this._names;
+  }
+
+  /*
+  * Return the in-memory name index, or null when it is not loaded
+  */
+  public NameIndex getNameIndex()
+  {
+    return this._names;
+  }
+
+  /**
+  * Returns one page of the friends of a user, ordered by userId.  The page
+  * starts after a given userId, so the next page is asked for with the
+  * userId of the last friend of this one.
+  *
+  * @param afterUserId the last userId of the previous page, null for the first page
+  * @param limit maximum number of friends returned
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public List<Member> getFriends(String username, String afterUserId, int limit) throws SQLException
+  {
+    FriendGraph graph = _friends;
+    if (graph != null)
+    {
+      List<Member> friendsList = new ArrayList<Member>();
+      for (int friend : graph.getFriends(username))
+      {
+        String userId = graph.getUserId(friend);
+        if (afterUserId == null || userId.compareTo(afterUserId) > 0)
+        {
+          friendsList.add(new Member(userId, graph.getName(friend)));
+        }
+      }
+      Collections.sort(friendsList, Member.BY_USER_ID);
+      return friendsList.size() > limit ? new ArrayList<Member>(friendsList.subList(0, limit)) : friendsList;
+    }
+
+    // one branch per direction of the friendship, each can use its own index
+    String sql = "SELECT U.userId, U.name "
+                +"FROM   USR U, CONNECTION_USR C "
+                +"WHERE  C.connectionId = ? AND C.status='ACCEPT' AND U.userId = C.userId AND U.userId != ? "
+                       +"AND U.userId > ? "
+                +"UNION "
+                +"SELECT U.userId, U.name "
+                +"FROM   USR U, CONNECTION_USR C "
+                +"WHERE  C.userId = ? AND C.status='ACCEPT' AND U.userId = C.connectionId AND U.userId != ? "
+                       +"AND U.userId > ? "
+                +"ORDER BY 1 LIMIT ?";
+    String after = afterUserId == null ? "" : afterUserId;
+    return queryForList(sql, Member.MAPPER, username, username, after, username, username, after, limit);
+  }//end getFriends
+
+  /**
+  * Returns the number of friends of a user
+  *
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public int getFriendCount(String username) throws SQLException
+  {
+    FriendGraph graph = _friends;
+    if (graph != null)
+    {
+      return graph.getFriendCount(username);
+    }
+
+    // the friends query of getFriends without the paging
+    String sql = "SELECT U.userId "
+                +"FROM   USR U, CONNECTION_USR C "
+                +"WHERE  C.connectionId = ? AND C.status='ACCEPT' AND U.userId = C.userId AND U.userId != ? "
+                +"UNION "
+                +"SELECT U.userId "
+                +"FROM   USR U, CONNECTION_USR C "
+                +"WHERE  C.userId = ? AND C.status='ACCEPT' AND U.userId = C.connectionId AND U.userId != ?";
+    return (int) count(sql, username, username, username, username);
+  }//end getFriendCount
+
+  /**
+  * Returns if two users are friends or one has sent the other a request
+  *
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public boolean isConnected(String username, String connectionid) throws SQLException
+  {
+    String sql = "SELECT  * "
+                +"FROM    CONNECTION_USR C "
+                +"WHERE   (C.userId=? AND C.connectionId=?) "
+                     +"OR (C.userId=? AND C.connectionId=?)";
+    return exists(sql, username, connectionid, connectionid, username);
+  }
+
+  /**
+  * @throws java.sql.SQLException when the request cannot be inserted
+  */
+  public void sendConnectionRequest(String username, String connectionid) throws SQLException
+  {
+    executeUpdate("INSERT INTO CONNECTION_USR VALUES (?,?,'REQUEST')", username, connectionid);
+  }
+
+  /**
+  * Returns the users waiting for an answer to their friend request
+  *
+  * @return the userId of each requester
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public List<List<String>> getConnectionRequests(String username) throws SQLException
+  {
+    String sql = "SELECT C.userId FROM CONNECTION_USR C WHERE C.status='REQUEST' AND C.connectionid=?";
+    return executeQueryAndReturnResult(sql, username);
+  }
+
+  /**
+  * Accepts or declines a pending friend request, keeping the friendship
+  * graph up to date.  Requests already answered are left as they are.
+  *
+  * @param requester who sent the request
+  * @param username who answers it
+  * @param accept true to accept, false to decline
+  * @throws java.sql.SQLException when the request cannot be updated
+  * @throws java.lang.IllegalArgumentException when requester has no pending request to username
+  */
+  public void respondToConnectionRequest(String requester, String username, boolean accept) throws SQLException
+  {
+    String sql = "UPDATE CONNECTION_USR SET status=? "
+                +"WHERE CONNECTION_USR.userId=? AND CONNECTION_USR.connectionId=? AND CONNECTION_USR.status='REQUEST'";
+    if (executeUpdate(sql, accept ? "ACCEPT" : "DECLINE", requester, username) == 0)
+    {
+      throw new IllegalArgumentException("No pending request");
+    }
+    FriendGraph graph = _friends;
+    if (accept && graph != null)
+    {
+      graph.addFriendship(requester, username);
+    }
+  }
+
+  /**
+  * Returns if connectionid is within maxLevel levels of connections of
+  * username, using the search picked with -Dprofnetwork.rangeCheck
+  * (memory, sql or java); memory falls back to sql while the graph is not loaded
+  *
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public boolean checkRange(String username, String connectionid, int maxLevel) throws SQLException
+  {
+    FriendGraph graph = _friends;
+    if (RANGE_CHECK.equals("memory") && graph != null)
+    {
+      return graph.isWithin(username, connectionid, maxLevel);
+    }
+    if (RANGE_CHECK.equals("java"))
+    {
+      return checkLimitedRange(username, connectionid, maxLevel, new HashSet<String>());
+    }
+    return checkRangeRecursive(username, connectionid, maxLevel);
+  }
+
+  /**
+  * Returns if connectionid is within maxLevel levels of connections of username.
+  * The breadth first search runs on the server as one recursive query that
+  * carries a level per row: its frontier, the users first reached at that
+  * level, and everyone seen so far, so each user is expanded once.  The
+  * recursion ends when a level reaches connectionid or nobody new.
+  *
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public boolean checkRangeRecursive(String username, String connectionid, int maxLevel) throws SQLException
+  {
+    String sql = "WITH RECURSIVE reach(frontier, seen, hops) AS ( "
+                +"    SELECT ARRAY[CAST(? AS text)], ARRAY[CAST(? AS text)], 0 "
+                +"  UNION ALL "
+                +"    SELECT N.next, R.seen || N.next, R.hops + 1 "
+                +"    FROM   reach R, LATERAL ( "
+                +"             SELECT array_agg(F.friend) AS next "
+                +"             FROM   (SELECT C.connectionId AS friend FROM CONNECTION_USR C "
+                +"                     WHERE  C.status='ACCEPT' AND C.userId = ANY(R.frontier) "
+                +"                     UNION "
+                +"                     SELECT C.userId FROM CONNECTION_USR C "
+                +"                     WHERE  C.status='ACCEPT' AND C.connectionId = ANY(R.frontier) "
+                +"                     EXCEPT "
+                +"                     SELECT unnest(R.seen)) F) N "
+                +"    WHERE  R.hops < ? AND N.next IS NOT NULL AND NOT (? = ANY(R.frontier)) "
+                +") "
+                +"SELECT 1 FROM reach WHERE ? = ANY(reach.frontier)";
+    return exists(sql, username, username, maxLevel, connectionid, connectionid);
+  }
+
+  /**
+  * Returns if connectionid is within maxLevel levels of connections of
+  * username with a depth first search that runs one query per visited user
+  *
+  * @param visited users already searched, shared by the recursion
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public boolean checkLimitedRange(String username, String connectionid, int maxLevel, Set<String> visited) throws SQLException
+  {
+    if (maxLevel < 0 || visited.contains(username))
+    {
+      return false;
+    }
+    visited.add(username);
+
+    String sql = "SELECT U.userId, U.name "
+                +"FROM   USR U, CONNECTION_USR C "
+                +"WHERE  U.userId != ? AND C.status='ACCEPT' "
+                       + "AND ((U.userId = C.userId AND C.connectionId = ?) "
+                       +"OR (C.userId = ? AND C.connectionId = U.userId))";
+    for (List<String> sublist : executeQueryAndReturnResult(sql, username, username, username))
+    {
+      String friend = sublist.get(0).trim();
+      if (friend.equals(connectionid) || checkLimitedRange(friend, connectionid, maxLevel-1, visited))
+      {
+        return true;
+      }
+    }
+    return false;
+  }//end checkLimitedRange
+
+  //==============END: FRIENDS===========================================================================
+  //=====================================================================================================
+  //==============BEGIN: MESSAGES========================================================================
+
+  // messages of ?, the sender then the receiver, that they have not deleted
+  private static final String VISIBLE_MESSAGES_SQL =
+    "SELECT * "
+   +"FROM MESSAGE M "
+   +"WHERE ((M.senderId=? AND (M.deleteStatus=0 OR M.deleteStatus=2)) "
+     +"OR (M.receiverId=? AND (M.deleteStatus=0 OR M.deleteStatus=1))) ";
+
+  private static final String NEWEST_FIRST = "ORDER BY M.sentAt DESC, M.msgId DESC LIMIT ?";
+
+  /**
+  * Returns one page of the messages sent or received by a user that they
+  * have not deleted, newest first.  The page starts after a given message,
+  * so the next page is asked for with the last message of this one and the
+  * database reads only the rows of the page.  The page is first looked for
+  * in the MESSAGE partitions of the profnetwork.messages.windowDays before
+  * its cursor, which the planner prunes the others by; only a page the
+  * window cannot fill reads the older months, newest partition first.
+  * Inboxes the InboxCache holds are served from memory.
+  *
+  * @param after the last message of the previous page, null for the first page
+  * @param limit maximum number of messages returned
+  * @return the MESSAGE rows
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public List<Message> getMessages(String username, Message after, int limit) throws SQLException
+  {
+    flushMessages();
+    if (_inbox != null)
+    {
+      List<Message> cached = _inbox.getMessages(username, after, limit);
+      if (cached != null)
+      {
+        return cached;
+      }
+    }
+    Timestamp from = new Timestamp((after == null ? System.currentTimeMillis() : after.getSentAt().getTime())
+                                   - MESSAGE_WINDOW_MS);
+    List<Message> page;
+    if (after == null)
+    {
+      page = queryForList(VISIBLE_MESSAGES_SQL + "AND M.sentAt >= ? " + NEWEST_FIRST,
+                          Message.MAPPER, username, username, from, limit);
+    }
+    else
+    {
+      page = queryForList(VISIBLE_MESSAGES_SQL + "AND M.sentAt >= ? AND M.sentAt <= ? "
+                            +"AND (M.sentAt < ? OR M.msgId < ?) " + NEWEST_FIRST,
+                          Message.MAPPER, username, username, from, after.getSentAt(),
+                          after.getSentAt(), after.getMsgId(), limit);
+    }
+    if (page.size() < limit)
+    {
+      page = new ArrayList<Message>(page);
+      page.addAll(queryForList(VISIBLE_MESSAGES_SQL + "AND M.sentAt < ? " + NEWEST_FIRST,
+                               Message.MAPPER, username, username, from, limit - page.size()));
+    }
+    return page;
+  }
+
+  /**
+  * Returns one page of the messages of a user, newest first, after the
+  * message with a given msgId; see getMessages(String, Message, int).
+  *
+  * @param afterMsgId the last msgId of the previous page, -1 for the first page
+  * @param limit maximum number of messages returned
+  * @return the MESSAGE rows, none when afterMsgId is not a message
+  * @throws java.sql.SQLException when failed to execute the query
+  */
+  public List<Message> getMessages(String username, int afterMsgId, int limit) throws SQLException
+  {
+    if (afterMsgId < 0)
+    {
+      return getMessages(username, (Message) null, limit);
+    }
+    flushMessages();
+    Timestamp sentAt = _inbox == null ? null : _inbox.getSentAt(username, afterMsgId);
+    Message after = sentAt != null
+      ? new Message(afterMsgId, null, null, null, null, 0, null, sentAt)
+      : queryForObject("SELECT * FROM MESSAGE M WHERE M.msgId=?", Message.MAPPER, afterMsgId);
+    if (after == null)
+    {
+      return new ArrayList<Message>();
+    }
+    return getMessages(username, after, limit);
+  }
+
+  /**
+  * Marks the unread messages received by a user as read.  With the inbox
+  * cache only the messages the user was shown are updated, see
+  * InboxCache.markRead.
+  *
+  * @throws java.sql.SQLException when the messages cannot be updated
+  */
+  public void markMessagesRead(String username) throws SQLException
+  {
+    if (_inbox != null && _inbox.markRead(username))
+    {
+      return;
+    }
+    executeUpdate("UPDATE MESSAGE SET status='READ' WHERE MESSAGE.receiverId=? AND STATUS='UNREAD'", username);
+  }
+
+  /**
+  * Stores a new unread message
+  *
+  * @param sendTime when the message was sent, as MM-dd-yyyy HH:mm:ss
+  * @return the msgId of the message
+  * @throws java.sql.SQLException when the message cannot be inserted
+  */
+  public int sendMessage(String senderid, String receiverid, String contents, String sendTime) throws SQLException
+  {
+    int msgId = _msgIds.next();
+    executeUpdate(MessageQueue.INSERT_SQL,
+      msgId, senderid, receiverid, contents, sendTime, 0, "UNREAD", sentAt(sendTime));
+    return msgId;
+  }
+
+  /**
+  * Queues a new unread message for the write-behind writer (see
+  * MessageQueue) and returns without waiting for the database.  Waits only
+  * while the queue is full.
+  *
+  * @param sendTime when the message was sent, as MM-dd-yyyy HH:mm:ss
+  * @throws InterruptedException when interrupted while waiting for room in the queue
+  */
+  public void queueMessage(String senderid, String receiverid, String contents, String sendTime) throws InterruptedException
+  {
+    MessageQueue outbox = _outbox;
+    if (outbox == null)
+    {
+      synchronized (this)
+      {
+        if (_outbox == null)
+        {
+          _outbox = new MessageQueue(this._pool, this._msgIds);
+        }
+        outbox = _outbox;
+      }
+    }
+    outbox.send(senderid, receiverid, contents, sendTime);
+  }
+
+  /*
+  * Wait until the queued messages are stored, so that a read sees them
+  */
+  public void flushMessages()
+  {
+    MessageQueue outbox = _outbox;
+    if (outbox == null)
+    {
+      return;
+    }
+    try
+    {
+      outbox.flush();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+  * Deletes a message for one user: the sender's or the receiver's flag of
+  * deleteStatus is set on the server, so a delete by the other party at
+  * the same time is not lost.  When the user's inbox is cached, its sentAt
+  * is known and only the message's MESSAGE partition is updated; otherwise
+  * every partition is looked up by msgId.
+  *
+  * @throws java.sql.SQLException when the message cannot be updated
+  */
+  public void deleteMessage(String username, int msgId) throws SQLException
+  {
+    deleteMessage(username, msgId, _inbox == null ? null : _inbox.getSentAt(username, msgId));
+  }
+
+  /**
+  * Deletes a message read with getMessages for one user, in its MESSAGE
+  * partition only
+  *
+  * @throws java.sql.SQLException when the message cannot be updated
+  */
+  public void deleteMessage(String username, Message message) throws SQLException
+  {
+    deleteMessage(username, message.getMsgId(), message.getSentAt());
+  }
+
+  private void deleteMessage(String username, int msgId, Timestamp sentAt) throws SQLException
+  {
+    String sql = "UPDATE MESSAGE SET deleteStatus = deleteStatus "
+                  +"| CASE WHEN MESSAGE.senderId=? THEN 1 ELSE 0 END "
+                  +"| CASE WHEN MESSAGE.receiverId=? THEN 2 ELSE 0 END "
+                +"WHERE MESSAGE.msgId=?";
+    if (sentAt == null)
+    {
+      executeUpdate(sql, username, username, msgId);
+    }
+    else
+    {
+      executeUpdate(sql + " AND MESSAGE.sentAt=?", username, username, msgId, sentAt);
+    }
+    if (_inbox != null)
+    {
+      _inbox.removeMessage(username, msgId);
+    }
+  }
+
+  /*
+  * Return the sentAt of a new message: its sendTime, or now if that cannot be read
+  */
+  static Timestamp sentAt(String sendTime)
+  {
+    Timestamp sentAt = Message.sentAt(sendTime);
+    return sentAt != null ? sentAt : new Timestamp(System.currentTimeMillis());
+  }
+
+  /**
+  * Sets the deleteStatus of a message: 1 deleted by the sender, 2 by the
+  * receiver, 3 by both.  Looks the msgId up in every MESSAGE partition;
+  * the overload taking sentAt updates only the message's partition.
+  *
+  * @throws java.sql.SQLException when the message cannot be updated
+  */
+  public void setDeleteStatus(int msgId, int deleteStatus) throws SQLException
+  {
+    executeUpdate("UPDATE MESSAGE SET deleteStatus=? WHERE MESSAGE.msgId=?", deleteStatus, msgId);
+  }
+
+  /**
+  * Sets the deleteStatus of the message with msgId and sentAt (see Message.getSentAt)
+  *
+  * @throws java.sql.SQLException when the message cannot be updated
+  */
+  public void setDeleteStatus(int msgId, Timestamp sentAt, int deleteStatus) throws SQLException
+  {
+    executeUpdate("UPDATE MESSAGE SET deleteStatus=? WHERE MESSAGE.msgId=? AND MESSAGE.sentAt=?",
+      deleteStatus, msgId, sentAt);
+  }
+
+  //==============END: MESSAGES==========================================================================
+}//end Database
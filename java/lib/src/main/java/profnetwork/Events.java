@@ -0,0 +1,133 @@
+package profnetwork;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the server commands and client screens,
+ * the statements of the Database helpers and the import chunks, so that a
+ * recording shows the application latency next to the CPU, GC and lock
+ * samples of the same moments.  Each event is timed by begin and commit; while no recording
+ * has the event enabled, shouldCommit is false and the fields are not even
+ * filled in.
+ *
+ * Record them with e.g.
+ *   java -XX:StartFlightRecording=filename=profnetwork.jfr,settings=profile ...
+ * and look for the ProfNetwork category in JDK Mission Control, or
+ *   jfr print --events profnetwork.Sql profnetwork.jfr
+ */
+public final class Events
+{
+  private Events()
+  {
+  }
+
+  /*
+  * A user operation: a command of the server
+  */
+  @Name("profnetwork.Operation")
+  @Label("Operation")
+  @Category("ProfNetwork")
+  @Description("A command of the server")
+  public static final class Operation extends Event
+  {
+    @Label("Operation")
+    public String name;
+
+    @Label("User")
+    public String user;
+
+    @Label("Failed")
+    public boolean failed;
+  }
+
+  /*
+  * A menu option of the command line client, including the time the user
+  * takes at its prompts
+  */
+  @Name("profnetwork.Screen")
+  @Label("Screen")
+  @Category("ProfNetwork")
+  @Description("A menu option of the command line client, including the user's typing")
+  public static final class Screen extends Event
+  {
+    @Label("Screen")
+    public String name;
+
+    @Label("User")
+    public String user;
+  }
+
+  /*
+  * A statement run by a Database helper, tagged by its template
+  */
+  @Name("profnetwork.Sql")
+  @Label("SQL Statement")
+  @Category({ "ProfNetwork", "SQL" })
+  @Description("A statement run by a Database helper, with ? placeholders for its parameters")
+  public static final class Sql extends Event
+  {
+    @Label("Statement")
+    public String sql;
+
+    @Label("Rows")
+    @Description("Rows returned or changed, -1 when not known")
+    public int rows;
+
+    @Label("Failed")
+    public boolean failed;
+
+    // System.nanoTime at begin, for Metrics and the SlowQueryLog; 0 when neither is on
+    transient long startNanos;
+
+    /*
+    * End the event and commit it, with its fields, if a recording wants it
+    */
+    void finish(String sql, int rows, boolean failed)
+    {
+      end();
+      if (shouldCommit())
+      {
+        this.sql = sql;
+        this.rows = rows;
+        this.failed = failed;
+        commit();
+      }
+    }
+  }//end Sql
+
+  /*
+  * One chunk of a BulkLoader, sent and committed as one transaction
+  */
+  @Name("profnetwork.ImportBatch")
+  @Label("Import Batch")
+  @Category("ProfNetwork")
+  @Description("A chunk of CSV rows loaded into one table in one transaction")
+  @StackTrace(false)
+  public static final class ImportBatch extends Event
+  {
+    @Label("Table")
+    public String table;
+
+    @Label("Method")
+    @Description("COPY or INSERT")
+    public String method;
+
+    @Label("Rows")
+    public int rows;
+
+    @Label("Rows Loaded")
+    public int loaded;
+
+    @Label("Rows Skipped")
+    public int skipped;
+
+    @Label("Replayed")
+    @Description("The chunk failed and was loaded again row by row")
+    public boolean replayed;
+  }
+}//end Events
@@ -0,0 +1,544 @@
+package profnetwork;
+
+import java.sql.ResultSet;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of the accepted friendships in CONNECTION_USR.  userIds
+ * are interned to dense int ids and the adjacency is kept in compressed
+ * sparse row form (one offsets array and one targets array), so friend
+ * lists, friend counts and n-level reachability (see Reachability) are answered from primitive
+ * int arrays without touching the database or boxing anything.
+ *
+ * Friendships accepted after the graph was built are kept in small per-user
+ * overflow arrays and folded into the CSR arrays once there are enough of
+ * them.  Readers and writers are coordinated with a read/write lock.
+ */
+public class FriendGraph
+{
+  private static final int FETCH_SIZE = 10000;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // users, by dense id
+  private String[] userIds = new String[1024];
+  private String[] names = new String[1024];
+  private int userCount = 0;
+
+  // open addressing hash table of userId -> id + 1 (0 marks an empty slot)
+  private int[] slots = new int[2048];
+
+  // compressed sparse row adjacency of users 0 .. baseCount-1:
+  // the friends of u are targets[offsets[u] .. offsets[u+1]-1]
+  private int[] offsets = new int[1];
+  private int[] targets = new int[0];
+  private int baseCount = 0;
+
+  // friendships added since the CSR arrays were last built
+  private int[][] extra = new int[1024][];
+  private int[] extraCount = new int[1024];
+  private int extraEdges = 0;
+
+  private int friendships = 0;
+
+  // reusable search state, one per thread
+  private final ThreadLocal<Reachability> searches = new ThreadLocal<Reachability>()
+  {
+    protected Reachability initialValue()
+    {
+      return new Reachability();
+    }
+  };
+
+  /**
+  * Builds the graph from the USR and CONNECTION_USR tables
+  *
+  * @param db the database to read from
+  * @return the loaded graph
+  * @throws java.sql.SQLException when the tables cannot be read
+  */
+  public static FriendGraph load(Database db) throws SQLException
+  {
+    FriendGraph graph = new FriendGraph();
+    int[] from = new int[1024];
+    int[] to = new int[1024];
+    int edges = 0;
+
+    ConnectionPool pool = db.getPool();
+    ConnectionPool.Handle conn = pool.borrow();
+    try
+    {
+      // a transaction lets the driver fetch large results in batches
+      conn.getConnection().setAutoCommit(false);
+
+      PreparedStatement stmt = conn.getStatements().prepare("SELECT U.userId, U.name FROM USR U");
+      stmt.setFetchSize(FETCH_SIZE);
+      ResultSet rs = stmt.executeQuery();
+      try
+      {
+        while (rs.next())
+        {
+          graph.intern(rs.getString(1).trim(), rs.getString(2));
+        }
+      }
+      finally
+      {
+        rs.close();
+      }
+
+      stmt = conn.getStatements().prepare(
+        "SELECT C.userId, C.connectionId FROM CONNECTION_USR C WHERE C.status='ACCEPT'");
+      stmt.setFetchSize(FETCH_SIZE);
+      rs = stmt.executeQuery();
+      try
+      {
+        while (rs.next())
+        {
+          int a = graph.indexOf(rs.getString(1).trim());
+          int b = graph.indexOf(rs.getString(2).trim());
+          if (a < 0 || b < 0 || a == b)
+          {
+            continue;   // same rule as the friend queries: both must be users
+          }
+          if (edges == from.length)
+          {
+            from = Arrays.copyOf(from, edges * 2);
+            to = Arrays.copyOf(to, edges * 2);
+          }
+          from[edges] = a;
+          to[edges] = b;
+          ++edges;
+        }
+      }
+      finally
+      {
+        rs.close();
+      }
+    }//end try
+    finally
+    {
+      pool.release(conn);
+    }
+
+    graph.build(from, to, edges);
+    return graph;
+  }//end load
+
+  public int getUserCount()
+  {
+    lock.readLock().lock();
+    try
+    {
+      return userCount;
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getFriendshipCount()
+  {
+    lock.readLock().lock();
+    try
+    {
+      return friendships;
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  /*
+  * Return the dense id of a user, or -1 if unknown
+  */
+  public int indexOf(String userId)
+  {
+    lock.readLock().lock();
+    try
+    {
+      return find(userId);
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  public String getUserId(int user)
+  {
+    lock.readLock().lock();
+    try
+    {
+      return userIds[user];
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  public String getName(int user)
+  {
+    lock.readLock().lock();
+    try
+    {
+      return names[user];
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  /*
+  * Register a new user (after sign up)
+  */
+  public void addUser(String userId, String name)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      intern(userId, name);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+  * Records an accepted friendship between two users
+  *
+  * @return false if they already were friends
+  */
+  public boolean addFriendship(String userId, String connectionId)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      int a = intern(userId, null);
+      int b = intern(connectionId, null);
+      if (a == b || adjacent(a, b))
+      {
+        return false;
+      }
+      appendExtra(a, b);
+      appendExtra(b, a);
+      ++friendships;
+      if (extraEdges > Math.max(1024, targets.length / 8))
+      {
+        compact();
+      }
+      return true;
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }//end addFriendship
+
+  /*
+  * Return the number of friends of a user (0 if unknown)
+  */
+  public int getFriendCount(String userId)
+  {
+    lock.readLock().lock();
+    try
+    {
+      int u = find(userId);
+      return u < 0 ? 0 : degree(u);
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  /*
+  * Return the dense ids of the friends of a user (empty if unknown)
+  */
+  public int[] getFriends(String userId)
+  {
+    lock.readLock().lock();
+    try
+    {
+      int u = find(userId);
+      if (u < 0)
+      {
+        return new int[0];
+      }
+      int[] friends = new int[degree(u)];
+      for (int i = 0; i < friends.length; i++)
+      {
+        friends[i] = neighbor(u, i);
+      }
+      return friends;
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }//end getFriends
+
+  /**
+  * Returns if connectionId can be reached from userId over at most maxLevel
+  * friendships
+  *
+  * @param userId where the search starts
+  * @param connectionId the user looked for
+  * @param maxLevel the maximum number of friendships on the path
+  */
+  public boolean isWithin(String userId, String connectionId, int maxLevel)
+  {
+    return findPath(userId, connectionId, maxLevel) != null;
+  }
+
+  /**
+  * Finds a chain of at most maxLevel friendships from userId to connectionId
+  * with a bidirectional breadth first search
+  *
+  * @param userId where the search starts
+  * @param connectionId the user looked for
+  * @param maxLevel the maximum number of friendships on the path
+  * @return the userIds on the path, both ends included, or null when out of range
+  */
+  public String[] findPath(String userId, String connectionId, int maxLevel)
+  {
+    lock.readLock().lock();
+    try
+    {
+      int source = find(userId);
+      int target = find(connectionId);
+      if (source < 0 || target < 0)
+      {
+        return null;
+      }
+
+      int[] path = searches.get().search(this, source, target, maxLevel);
+      if (path == null)
+      {
+        return null;
+      }
+      String[] result = new String[path.length];
+      for (int i = 0; i < path.length; i++)
+      {
+        result[i] = userIds[path[i]];
+      }
+      return result;
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }//end findPath
+
+  //==============internals: callers hold the lock=======================================================
+
+  int size()
+  {
+    return userCount;
+  }
+
+  int degree(int u)
+  {
+    int base = u < baseCount ? offsets[u + 1] - offsets[u] : 0;
+    return base + extraCount[u];
+  }
+
+  int neighbor(int u, int i)
+  {
+    if (u < baseCount)
+    {
+      int base = offsets[u + 1] - offsets[u];
+      if (i < base)
+      {
+        return targets[offsets[u] + i];
+      }
+      i -= base;
+    }
+    return extra[u][i];
+  }
+
+  private boolean adjacent(int a, int b)
+  {
+    int deg = degree(a);
+    for (int i = 0; i < deg; i++)
+    {
+      if (neighbor(a, i) == b)
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int find(String userId)
+  {
+    int mask = slots.length - 1;
+    int i = userId.hashCode() & mask;
+    while (slots[i] != 0)
+    {
+      if (userIds[slots[i] - 1].equals(userId))
+      {
+        return slots[i] - 1;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  /*
+  * Return the id of a user, adding it if new; a non-null name replaces the stored one
+  */
+  private int intern(String userId, String name)
+  {
+    int u = find(userId);
+    if (u >= 0)
+    {
+      if (name != null)
+      {
+        names[u] = name;
+      }
+      return u;
+    }
+
+    if (userCount == userIds.length)
+    {
+      int capacity = userCount * 2;
+      userIds = Arrays.copyOf(userIds, capacity);
+      names = Arrays.copyOf(names, capacity);
+      extra = Arrays.copyOf(extra, capacity);
+      extraCount = Arrays.copyOf(extraCount, capacity);
+    }
+    u = userCount++;
+    userIds[u] = userId;
+    names[u] = name;
+
+    if (userCount * 2 > slots.length)
+    {
+      rehash(slots.length * 2);
+    }
+    else
+    {
+      insertSlot(u);
+    }
+    return u;
+  }//end intern
+
+  private void rehash(int capacity)
+  {
+    slots = new int[capacity];
+    for (int u = 0; u < userCount; u++)
+    {
+      insertSlot(u);
+    }
+  }
+
+  private void insertSlot(int u)
+  {
+    int mask = slots.length - 1;
+    int i = userIds[u].hashCode() & mask;
+    while (slots[i] != 0)
+    {
+      i = (i + 1) & mask;
+    }
+    slots[i] = u + 1;
+  }
+
+  private void appendExtra(int u, int v)
+  {
+    int[] list = extra[u];
+    if (list == null)
+    {
+      list = extra[u] = new int[4];
+    }
+    else if (extraCount[u] == list.length)
+    {
+      list = extra[u] = Arrays.copyOf(list, list.length * 2);
+    }
+    list[extraCount[u]++] = v;
+    ++extraEdges;
+  }
+
+  /*
+  * Build the CSR arrays from an edge list, in both directions and without duplicates
+  */
+  private void build(int[] from, int[] to, int edges)
+  {
+    int n = userCount;
+    int[] counts = new int[n + 1];
+    for (int e = 0; e < edges; e++)
+    {
+      ++counts[from[e] + 1];
+      ++counts[to[e] + 1];
+    }
+    for (int u = 0; u < n; u++)
+    {
+      counts[u + 1] += counts[u];
+    }
+
+    int[] fill = Arrays.copyOf(counts, n);
+    int[] all = new int[counts[n]];
+    for (int e = 0; e < edges; e++)
+    {
+      all[fill[from[e]]++] = to[e];
+      all[fill[to[e]]++] = from[e];
+    }
+
+    // sort every adjacency list and squeeze out duplicate friendships
+    int[] newOffsets = new int[n + 1];
+    int out = 0;
+    for (int u = 0; u < n; u++)
+    {
+      int start = counts[u], end = counts[u + 1];
+      Arrays.sort(all, start, end);
+      newOffsets[u] = out;
+      for (int i = start; i < end; i++)
+      {
+        if (i == start || all[i] != all[i - 1])
+        {
+          all[out++] = all[i];
+        }
+      }
+    }
+    newOffsets[n] = out;
+
+    this.offsets = newOffsets;
+    this.targets = Arrays.copyOf(all, out);
+    this.baseCount = n;
+    this.friendships = out / 2;
+    Arrays.fill(extra, null);
+    Arrays.fill(extraCount, 0);
+    this.extraEdges = 0;
+  }//end build
+
+  /*
+  * Fold the overflow edges into new CSR arrays
+  */
+  private void compact()
+  {
+    int[] from = new int[targets.length / 2 + extraEdges];
+    int[] to = new int[from.length];
+    int edges = 0;
+    for (int u = 0; u < userCount; u++)
+    {
+      int deg = degree(u);
+      for (int i = 0; i < deg; i++)
+      {
+        int v = neighbor(u, i);
+        if (u < v)
+        {
+          from[edges] = u;
+          to[edges] = v;
+          ++edges;
+        }
+      }
+    }
+    build(from, to, edges);
+  }
+}//end FriendGraph
@@ -0,0 +1,146 @@
+package profnetwork;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out ids from a database sequence without a round trip per id.  The
+ * sequence is created with INCREMENT BY the block size (see
+ * sql/src/create_tables.sql), so each nextval reserves the whole block
+ * [value, value + increment) for this client: other sessions and other
+ * clients get other blocks from the same sequence, and ids never collide.
+ * Within a block ids come from an AtomicLong, without locking; only the
+ * thread that finds the block used up takes the lock to fetch the next one.
+ *
+ * The increment is read with every refill, so the allocator follows the
+ * sequence when it is altered.  With INCREMENT BY 1 it falls back to one
+ * nextval per id.  The unused rest of a block is lost when the client
+ * exits, so ids have gaps and only increase within a client.
+ */
+public class IdAllocator
+{
+  // the next value and the increment of the sequence in one round trip (pg_sequences needs Postgres 10)
+  private static final String REFILL_SQL =
+    "SELECT nextval(?), (SELECT S.increment_by FROM pg_sequences S "
+                       +"WHERE S.sequencename = ? AND S.schemaname = current_schema())";
+
+  /*
+  * One reserved block of ids: next is handed out while it is below end
+  */
+  private static class Block
+  {
+    final AtomicLong next;
+    final long end;
+
+    Block(long start, long end)
+    {
+      this.next = new AtomicLong(start);
+      this.end = end;
+    }
+  }
+
+  private final ConnectionPool pool;
+  private final String sequence;
+
+  private volatile Block block = new Block(0, 0);
+
+  private final AtomicLong allocated = new AtomicLong();
+  private final AtomicLong refills = new AtomicLong();
+  private final AtomicLong refillNanos = new AtomicLong();
+
+  /**
+  * @param pool where refills borrow a connection
+  * @param sequence name of the sequence, e.g. msg
+  */
+  public IdAllocator(ConnectionPool pool, String sequence)
+  {
+    this.pool = pool;
+    this.sequence = sequence;
+  }
+
+  /**
+  * Returns an id no other caller of this sequence gets
+  *
+  * @throws java.sql.SQLException when a new block cannot be reserved
+  */
+  public int next() throws SQLException
+  {
+    while (true)
+    {
+      Block current = block;
+      long id = current.next.getAndIncrement();
+      if (id < current.end)
+      {
+        allocated.incrementAndGet();
+        return (int) id;
+      }
+      synchronized (this)
+      {
+        // another thread may have refilled while this one waited
+        if (block == current)
+        {
+          block = reserve();
+        }
+      }
+    }//end while
+  }//end next
+
+  /*
+  * Return the number of ids handed out and of blocks reserved
+  */
+  public String getStats()
+  {
+    long n = refills.get();
+    return "id allocator " + sequence + ": " + allocated.get() + " ids from " + n + " blocks"
+      + (n == 0 ? "" : String.format(", avg refill %.3fms", refillNanos.get() / 1e6 / n));
+  }
+
+  public long getRefillCount()
+  {
+    return refills.get();
+  }
+
+  public long getAllocatedCount()
+  {
+    return allocated.get();
+  }
+
+  private Block reserve() throws SQLException
+  {
+    long start = System.nanoTime();
+    long timed = Metrics.start();
+    Events.Sql event = new Events.Sql();
+    event.begin();
+    boolean failed = true;
+    ConnectionPool.Handle conn = pool.borrow();
+    try
+    {
+      ResultSet rs = Database.prepare(conn, REFILL_SQL, sequence, sequence).executeQuery();
+      try
+      {
+        if (!rs.next())
+        {
+          throw new SQLException("nextval returned no row for sequence " + sequence);
+        }
+        long value = rs.getLong(1);
+        long increment = rs.getLong(2);
+        // a descending sequence or an unknown increment: use the value alone
+        failed = false;
+        return new Block(value, value + Math.max(1, increment));
+      }
+      finally
+      {
+        rs.close();
+      }
+    }//end try
+    finally
+    {
+      pool.release(conn);
+      refills.incrementAndGet();
+      refillNanos.addAndGet(System.nanoTime() - start);
+      Metrics.stop(Metrics.SQL, REFILL_SQL, timed, failed);
+      event.finish(REFILL_SQL, failed ? -1 : 1, failed);
+    }
+  }//end reserve
+}//end IdAllocator
@@ -0,0 +1,259 @@
+package profnetwork;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs CSV table imports in parallel.  Every table gets a reader thread that
+ * streams its CSV and cuts it into chunks of batchSize rows; the chunks of all
+ * tables are loaded by a fixed set of worker threads, each chunk through its
+ * own BulkLoader on a connection borrowed from the ConnectionPool.  A
+ * table only starts loading once the tables it depends on are complete, so
+ * independent tables (and the chunks of one large table) load concurrently.
+ *
+ * Tuning (system properties):
+ *   profnetwork.import.threads    worker threads (default: CPU count, capped by the pool size)
+ *   profnetwork.import.batchSize  rows per chunk (see BulkLoader)
+ */
+public class ImportScheduler
+{
+  public static final int DEFAULT_THREADS =
+    Integer.getInteger("profnetwork.import.threads", Runtime.getRuntime().availableProcessors()).intValue();
+
+  /**
+   * Describes one CSV file to load into one table.  Override transform to
+   * rewrite rows before they are loaded.
+   */
+  public static class Table
+  {
+    final String name;
+    final String csvFile;
+    final int numCols;
+    final String[] dependsOn;
+
+    /**
+    * @param name the destination table
+    * @param csvFile path of the CSV file
+    * @param numCols number of columns in the destination table
+    * @param dependsOn tables that must be loaded first
+    */
+    public Table(String name, String csvFile, int numCols, String... dependsOn)
+    {
+      this.name = name;
+      this.csvFile = csvFile;
+      this.numCols = numCols;
+      this.dependsOn = dependsOn;
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    public String getCsvFile()
+    {
+      return csvFile;
+    }
+
+    /*
+    * Return the row to load for a CSV record; the default loads it unchanged
+    */
+    public String[] transform(String[] row)
+    {
+      return row;
+    }
+  }//end Table
+
+  private final Database db;
+  private final int threads;
+  private final int batchSize;
+  private final Map<String, Job> jobs = new LinkedHashMap<String, Job>();
+
+  private ExecutorService workers;
+  private Semaphore inFlight;
+
+  public ImportScheduler(Database db)
+  {
+    this(db, DEFAULT_THREADS, BulkLoader.DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+  * @param db the database to import into
+  * @param threads degree of parallelism (worker threads), at most the size of the pool
+  * @param batchSize rows per chunk
+  */
+  public ImportScheduler(Database db, int threads, int batchSize)
+  {
+    this.db = db;
+    // each worker holds a connection while it loads a chunk; more would only wait for one
+    this.threads = Math.max(1, Math.min(threads, db.getPool().getMaxSize()));
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /*
+  * Add a table to the schedule; dependencies not in the schedule are treated as loaded
+  */
+  public ImportScheduler add(Table table)
+  {
+    jobs.put(table.name, new Job(table));
+    return this;
+  }
+
+  /**
+  * Loads all scheduled tables and prints a summary line per table
+  *
+  * @throws java.lang.InterruptedException when interrupted while waiting
+  */
+  public void run() throws InterruptedException
+  {
+    long start = System.nanoTime();
+    workers = Executors.newFixedThreadPool(threads);
+    inFlight = new Semaphore(threads * 2);
+    ExecutorService readers = Executors.newFixedThreadPool(Math.max(1, jobs.size()));
+
+    try
+    {
+      for (Job job : jobs.values())
+      {
+        readers.execute(job);
+      }
+      for (Job job : jobs.values())
+      {
+        job.done.await();
+      }
+    }//end try
+    finally
+    {
+      readers.shutdownNow();
+      workers.shutdownNow();
+    }//end finally
+
+    long loaded = 0, skipped = 0;
+    for (Job job : jobs.values())
+    {
+      System.out.println(BulkLoader.summary(job.table.name, job.loaded.get(), job.skipped.get(), job.elapsedNanos));
+      loaded += job.loaded.get();
+      skipped += job.skipped.get();
+    }
+    System.out.println(BulkLoader.summary("Total (" + threads + " threads)", loaded, skipped, System.nanoTime() - start));
+  }//end run
+
+  /*
+  * Reads one table's CSV and hands its chunks to the workers
+  */
+  private class Job implements Runnable
+  {
+    final Table table;
+    final CountDownLatch done = new CountDownLatch(1);
+    final Phaser chunks = new Phaser(1);
+    final AtomicLong loaded = new AtomicLong();
+    final AtomicLong skipped = new AtomicLong();
+    long elapsedNanos = 0;
+
+    Job(Table table)
+    {
+      this.table = table;
+    }
+
+    public void run()
+    {
+      long start = 0;
+      try
+      {
+        for (String dependency : table.dependsOn)
+        {
+          Job job = jobs.get(dependency);
+          if (job != null)
+          {
+            job.done.await();
+          }
+        }
+
+        start = System.nanoTime();
+        System.out.println("Loading " + table.name + "...");
+        try (CsvReader csv = new CsvReader(table.csvFile))
+        {
+          List<String[]> chunk = new ArrayList<String[]>(batchSize);
+          long firstRow = 1;
+          while (csv.next())
+          {
+            chunk.add(table.transform(csv.getRow()));
+            if (chunk.size() == batchSize)
+            {
+              submit(chunk, firstRow);
+              firstRow += chunk.size();
+              chunk = new ArrayList<String[]>(batchSize);
+            }
+          }
+          if (!chunk.isEmpty())
+          {
+            submit(chunk, firstRow);
+          }
+        }
+      }//end try
+      catch (Exception e)
+      {
+        System.err.println(table.name + ": " + e.getMessage());
+      }//end catch
+      finally
+      {
+        chunks.arriveAndAwaitAdvance();
+        elapsedNanos = start == 0 ? 0 : System.nanoTime() - start;
+        done.countDown();
+      }
+    }//end run
+
+    private void submit(final List<String[]> rows, final long firstRow) throws InterruptedException
+    {
+      inFlight.acquire();
+      chunks.register();
+      workers.execute(new Runnable()
+      {
+        public void run()
+        {
+          loadChunk(rows, firstRow);
+        }
+      });
+    }
+
+    private void loadChunk(List<String[]> rows, long firstRow)
+    {
+      ConnectionPool pool = db.getPool();
+      ConnectionPool.Handle conn = null;
+      BulkLoader loader = null;
+      try
+      {
+        conn = pool.borrow();
+        loader = new BulkLoader(conn.getConnection(), table.name, table.numCols, rows.size(), BulkLoader.DEFAULT_USE_COPY);
+        loader.setFirstRow(firstRow);
+        for (String[] row : rows)
+        {
+          loader.add(row);
+        }
+        loader.finish();
+        loaded.addAndGet(loader.getRowsLoaded());
+        skipped.addAndGet(loader.getRowsSkipped());
+        loader = null;
+      }//end try
+      catch (Exception e)
+      {
+        System.err.println(table.name + ": " + e.getMessage());
+        skipped.addAndGet(rows.size() - (loader == null ? 0 : loader.getRowsLoaded()));
+      }//end catch
+      finally
+      {
+        pool.release(conn);
+        inFlight.release();
+        chunks.arriveAndDeregister();
+      }
+    }//end loadChunk
+  }//end Job
+}//end ImportScheduler
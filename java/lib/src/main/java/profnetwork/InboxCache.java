@@ -0,0 +1,427 @@
+package profnetwork;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user cache of the messages a user can see, so that opening the inbox
+ * again costs a few small queries instead of reading every message.  Each
+ * cached inbox keeps its messages in (sentAt, msgId) order, the order
+ * Database.getMessages pages them in newest first, when it was last synced
+ * and the user's count of deleted messages (MESSAGE_DELETES, kept by a
+ * trigger, see sql/src/message_deletes.sql).  A sync
+ *
+ *   1. reads the user's delete count, one primary key lookup; if another
+ *      session deleted one of the user's messages since the last sync, the
+ *      inbox is read again in full;
+ *   2. otherwise reads only the messages sent since the last sync, less
+ *      lateMs for messages stored late (write-behind queue, clocks), by
+ *      sentAt, so only the newest MESSAGE partitions are looked at; msgIds
+ *      from IdAllocator blocks may arrive out of order, so they are merged
+ *      in by (sentAt, msgId);
+ *   3. asks for the status of the cached UNREAD messages the user received,
+ *      which they may have read since in another session, by msgId and
+ *      sentAt.  The status of a sent message is as of when it was cached.
+ *
+ * Marking read updates only the cached UNREAD messages, in one batch; a
+ * delete is applied to the database and dropped from the cache.  Users with
+ * more than maxMessages messages are not cached, their inbox is read page by
+ * page from the database (see Database.getMessages).  The least recently
+ * used inbox is dropped when more than maxUsers are cached.
+ *
+ * Tuning (system properties):
+ *   profnetwork.inboxCache.users        inboxes cached at most (default 1000)
+ *   profnetwork.inboxCache.maxMessages  larger inboxes are not cached (default 10000)
+ *   profnetwork.inboxCache.lateMs       how long after its sentAt a message may be stored
+ *                                       and still be picked up by a sync (default 300000)
+ */
+public class InboxCache
+{
+  public static final int DEFAULT_MAX_USERS =
+    Integer.getInteger("profnetwork.inboxCache.users", 1000).intValue();
+  public static final int DEFAULT_MAX_MESSAGES =
+    Integer.getInteger("profnetwork.inboxCache.maxMessages", 10000).intValue();
+  public static final long LATE_MS = Long.getLong("profnetwork.inboxCache.lateMs", 300000L).longValue();
+
+  // the messages a user can see: sent and not deleted by the sender, received and not deleted by the receiver
+  static final String VISIBLE =
+    "SELECT * "
+   +"FROM MESSAGE M "
+   +"WHERE ((M.senderId=? AND (M.deleteStatus=0 OR M.deleteStatus=2)) "
+     +"OR (M.receiverId=? AND (M.deleteStatus=0 OR M.deleteStatus=1)))";
+
+  private static final String DELETES_SQL =
+    "SELECT coalesce(max(D.deletes), 0) FROM MESSAGE_DELETES D WHERE D.userId=?";
+  private static final String RECENT_SQL = VISIBLE + " AND M.sentAt >= ? ORDER BY M.sentAt, M.msgId LIMIT ?";
+  private static final String ALL_SQL = VISIBLE + " ORDER BY M.sentAt, M.msgId LIMIT ?";
+  // the arrays are passed as text, {1,2,3}, which any driver can bind
+  private static final String READ_SQL =
+    "SELECT M.msgId FROM MESSAGE M "
+   +"WHERE M.msgId = ANY(CAST(? AS integer[])) AND M.sentAt = ANY(CAST(? AS timestamp[])) AND M.status='READ'";
+  // sentAt lets the planner update only the partition of the message
+  private static final String MARK_READ_SQL =
+    "UPDATE MESSAGE SET status='READ' WHERE MESSAGE.msgId=? AND MESSAGE.sentAt=? AND MESSAGE.status='UNREAD'";
+
+  /*
+  * The cached messages of one user, guarded by itself
+  */
+  private static class Inbox
+  {
+    final List<Message> messages = new ArrayList<Message>();
+    long syncedAt = 0;      // System.currentTimeMillis when the last sync began
+    long deletes = -1;      // the user's MESSAGE_DELETES count at that time
+    boolean loaded = false;
+    boolean tooLarge = false;
+  }
+
+  private final Database db;
+  private final int maxMessages;
+  private final LinkedHashMap<String, Inbox> inboxes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong updates = new AtomicLong();
+  private final AtomicLong reloads = new AtomicLong();
+
+  public InboxCache(Database db)
+  {
+    this(db, DEFAULT_MAX_USERS, DEFAULT_MAX_MESSAGES);
+  }
+
+  /**
+  * @param db where the messages are read and updated
+  * @param maxUsers inboxes kept at most
+  * @param maxMessages inboxes with more messages are not cached
+  */
+  public InboxCache(Database db, final int maxUsers, int maxMessages)
+  {
+    this.db = db;
+    this.maxMessages = maxMessages;
+    this.inboxes = new LinkedHashMap<String, Inbox>(16, 0.75f, true)
+    {
+      protected boolean removeEldestEntry(Map.Entry<String, Inbox> eldest)
+      {
+        return size() > maxUsers;
+      }
+    };
+  }
+
+  /**
+  * Returns one page of the messages of a user, newest first.  The first
+  * page brings the cached inbox up to date.
+  *
+  * @param after the last message of the previous page, null for the first page
+  * @param limit maximum number of messages returned
+  * @return the page, or null when the user has too many messages to cache
+  * @throws java.sql.SQLException when failed to read the messages
+  */
+  public List<Message> getMessages(String username, Message after, int limit) throws SQLException
+  {
+    Inbox inbox = inbox(username);
+    synchronized (inbox)
+    {
+      if (after == null || !inbox.loaded)
+      {
+        sync(username, inbox);
+      }
+      if (inbox.tooLarge)
+      {
+        return null;
+      }
+
+      int from = after == null ? inbox.messages.size() : position(inbox.messages, after.getSentAt(), after.getMsgId());
+      List<Message> page = new ArrayList<Message>();
+      for (int i = from - 1; i >= 0 && page.size() < limit; i--)
+      {
+        page.add(inbox.messages.get(i));
+      }
+      return page;
+    }
+  }//end getMessages
+
+  /**
+  * Marks the cached unread messages received by a user as read, in one
+  * batch.  Messages that arrived after the last sync stay unread.
+  *
+  * @return false when the user's inbox is not cached, nothing was updated
+  * @throws java.sql.SQLException when the messages cannot be updated
+  */
+  public boolean markRead(String username) throws SQLException
+  {
+    Inbox inbox = inbox(username);
+    synchronized (inbox)
+    {
+      if (!inbox.loaded || inbox.tooLarge)
+      {
+        return false;
+      }
+
+      List<Object[]> unread = new ArrayList<Object[]>();
+      for (Message m : inbox.messages)
+      {
+        if (m.getReceiverId().equals(username) && "UNREAD".equals(m.getStatus()))
+        {
+          unread.add(new Object[] { m.getMsgId(), m.getSentAt() });
+        }
+      }
+      if (unread.isEmpty())
+      {
+        return true;
+      }
+      db.executeBatch(MARK_READ_SQL, unread);
+
+      for (int i = 0; i < inbox.messages.size(); i++)
+      {
+        Message m = inbox.messages.get(i);
+        if (m.getReceiverId().equals(username) && "UNREAD".equals(m.getStatus()))
+        {
+          inbox.messages.set(i, m.withStatus("READ"));
+        }
+      }
+      return true;
+    }
+  }//end markRead
+
+  /*
+  * Drop a message the user deleted from their cached inbox
+  */
+  public void removeMessage(String username, int msgId)
+  {
+    Inbox inbox = inbox(username);
+    synchronized (inbox)
+    {
+      int at = indexOf(inbox.messages, msgId);
+      if (at >= 0)
+      {
+        inbox.messages.remove(at);
+        // the trigger counts this delete; expect it, so it does not cause a reload
+        ++inbox.deletes;
+      }
+    }
+  }
+
+  /*
+  * Return the sentAt of a message in the cached inbox of a user, null when it is not cached
+  */
+  public Timestamp getSentAt(String username, int msgId)
+  {
+    Inbox inbox;
+    synchronized (inboxes)
+    {
+      inbox = inboxes.get(username);
+    }
+    if (inbox == null)
+    {
+      return null;
+    }
+    synchronized (inbox)
+    {
+      int at = indexOf(inbox.messages, msgId);
+      return at < 0 ? null : inbox.messages.get(at).getSentAt();
+    }
+  }
+
+  /*
+  * Drop every cached inbox, e.g. after an import
+  */
+  public void invalidateAll()
+  {
+    synchronized (inboxes)
+    {
+      inboxes.clear();
+    }
+  }
+
+  /*
+  * Return the number of inboxes served from the cache as is, brought up to date, and read in full
+  */
+  public String getStats()
+  {
+    int size;
+    synchronized (inboxes)
+    {
+      size = inboxes.size();
+    }
+    return "inbox cache: " + size + " inboxes, " + hits.get() + " unchanged, "
+      + updates.get() + " updated, " + reloads.get() + " reloaded";
+  }
+
+  //==============internals==============================================================================
+
+  private Inbox inbox(String username)
+  {
+    synchronized (inboxes)
+    {
+      Inbox inbox = inboxes.get(username);
+      if (inbox == null)
+      {
+        inbox = new Inbox();
+        inboxes.put(username, inbox);
+      }
+      return inbox;
+    }
+  }
+
+  /*
+  * Bring a cached inbox up to date; the caller holds its lock
+  */
+  private void sync(String username, Inbox inbox) throws SQLException
+  {
+    if (inbox.tooLarge)
+    {
+      return;   // stays uncached until the entry is dropped
+    }
+    long now = System.currentTimeMillis();
+    // read before the messages, so a delete made meanwhile is seen by the next sync
+    long deletes = db.queryForLong(DELETES_SQL, username);
+    if (inbox.loaded && deletes == inbox.deletes)
+    {
+      List<Message> recent = db.queryForList(RECENT_SQL, Message.MAPPER, username, username,
+        new Timestamp(inbox.syncedAt - LATE_MS), maxMessages + 1);
+      int added = 0;
+      for (Message m : recent)
+      {
+        int at = position(inbox.messages, m.getSentAt(), m.getMsgId());
+        if (at < inbox.messages.size() && inbox.messages.get(at).getMsgId() == m.getMsgId())
+        {
+          inbox.messages.set(at, m);   // known already, take its current status
+        }
+        else
+        {
+          inbox.messages.add(at, m);
+          ++added;
+        }
+      }
+      if (inbox.messages.size() > maxMessages)
+      {
+        inbox.messages.clear();
+        inbox.tooLarge = true;
+        return;
+      }
+      if (added == 0)
+      {
+        hits.incrementAndGet();
+      }
+      else
+      {
+        updates.incrementAndGet();
+      }
+      refreshStatus(username, inbox);
+      inbox.syncedAt = now;
+      return;
+    }
+
+    reloads.incrementAndGet();
+    List<Message> all = db.queryForList(ALL_SQL, Message.MAPPER, username, username, maxMessages + 1);
+    inbox.messages.clear();
+    inbox.loaded = true;
+    inbox.syncedAt = now;
+    inbox.deletes = deletes;
+    inbox.tooLarge = all.size() > maxMessages;
+    if (!inbox.tooLarge)
+    {
+      inbox.messages.addAll(all);
+    }
+  }//end sync
+
+  /*
+  * Pick up the cached UNREAD messages the user received and has read since, in another session
+  */
+  private void refreshStatus(String username, Inbox inbox) throws SQLException
+  {
+    List<Object> msgIds = new ArrayList<Object>();
+    List<Object> sentAts = new ArrayList<Object>();
+    for (Message m : inbox.messages)
+    {
+      if ("UNREAD".equals(m.getStatus()) && m.getReceiverId().equals(username))
+      {
+        msgIds.add(m.getMsgId());
+        sentAts.add(m.getSentAt());
+      }
+    }
+    if (msgIds.isEmpty())
+    {
+      return;
+    }
+
+    final List<Integer> read = new ArrayList<Integer>();
+    db.forEach(READ_SQL, new RowHandler()
+      {
+        public boolean handle(ResultSet rs) throws SQLException
+        {
+          read.add(rs.getInt(1));
+          return true;
+        }
+      }, array(msgIds), array(sentAts));
+    Collections.sort(read);
+    for (int i = 0; i < inbox.messages.size(); i++)
+    {
+      Message m = inbox.messages.get(i);
+      if ("UNREAD".equals(m.getStatus()) && Collections.binarySearch(read, m.getMsgId()) >= 0)
+      {
+        inbox.messages.set(i, m.withStatus("READ"));
+      }
+    }
+  }//end refreshStatus
+
+  /*
+  * Return values as a Postgres array literal, each element quoted
+  */
+  private static String array(List<Object> values)
+  {
+    StringBuilder out = new StringBuilder("{");
+    for (Object value : values)
+    {
+      if (out.length() > 1)
+      {
+        out.append(',');
+      }
+      out.append('"').append(String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+    }
+    return out.append('}').toString();
+  }
+
+  /*
+  * Return the position of the first message at or after (sentAt, msgId)
+  */
+  private static int position(List<Message> messages, Timestamp sentAt, int msgId)
+  {
+    int low = 0, high = messages.size();
+    while (low < high)
+    {
+      int mid = (low + high) >>> 1;
+      Message m = messages.get(mid);
+      int c = m.getSentAt().compareTo(sentAt);
+      if (c < 0 || (c == 0 && m.getMsgId() < msgId))
+      {
+        low = mid + 1;
+      }
+      else
+      {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /*
+  * Return the position of the message with msgId, -1 if it is not cached; newest first, where deletes usually are
+  */
+  private static int indexOf(List<Message> messages, int msgId)
+  {
+    for (int i = messages.size() - 1; i >= 0; i--)
+    {
+      if (messages.get(i).getMsgId() == msgId)
+      {
+        return i;
+      }
+    }
+    return -1;
+  }
+}//end InboxCache
@@ -0,0 +1,185 @@
+package profnetwork;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the JSON the profile query builds on the server: an array of
+ * rows, each an array of scalar values, e.g. [["Acme", "Engineer", null]].
+ * Strings are unescaped, null stays null, numbers and booleans are kept as
+ * their text.  Objects and deeper nesting are not part of that output and
+ * are rejected.
+ */
+class JsonRows
+{
+  private final String json;
+  private int pos = 0;
+
+  private JsonRows(String json)
+  {
+    this.json = json;
+  }
+
+  /**
+  * Returns the rows of a JSON array of arrays; null or empty text is no rows
+  *
+  * @throws IllegalArgumentException when the text is not an array of arrays of scalars
+  */
+  static List<String[]> parse(String json)
+  {
+    List<String[]> rows = new ArrayList<String[]>();
+    if (json == null || json.trim().isEmpty())
+    {
+      return rows;
+    }
+
+    JsonRows parser = new JsonRows(json);
+    parser.expect('[');
+    if (!parser.skip(']'))
+    {
+      do
+      {
+        rows.add(parser.row());
+      }
+      while (parser.skip(','));
+      parser.expect(']');
+    }
+    parser.space();
+    if (parser.pos < json.length())
+    {
+      throw parser.error("end of input");
+    }
+    return rows;
+  }//end parse
+
+  private String[] row()
+  {
+    List<String> values = new ArrayList<String>();
+    expect('[');
+    if (!skip(']'))
+    {
+      do
+      {
+        values.add(value());
+      }
+      while (skip(','));
+      expect(']');
+    }
+    return values.toArray(new String[values.size()]);
+  }
+
+  private String value()
+  {
+    space();
+    if (pos >= json.length())
+    {
+      throw error("a value");
+    }
+    char c = json.charAt(pos);
+    if (c == '"')
+    {
+      return string();
+    }
+    if (c == '[' || c == '{')
+    {
+      throw error("a scalar");
+    }
+
+    // null, true, false or a number, up to the next delimiter
+    int start = pos;
+    while (pos < json.length() && ",] \t\r\n".indexOf(json.charAt(pos)) < 0)
+    {
+      ++pos;
+    }
+    String literal = json.substring(start, pos);
+    if (literal.isEmpty())
+    {
+      throw error("a value");
+    }
+    return "null".equals(literal) ? null : literal;
+  }//end value
+
+  private String string()
+  {
+    StringBuilder s = new StringBuilder();
+    ++pos;   // opening quote
+    while (pos < json.length())
+    {
+      char c = json.charAt(pos++);
+      if (c == '"')
+      {
+        return s.toString();
+      }
+      if (c != '\\')
+      {
+        s.append(c);
+        continue;
+      }
+      if (pos >= json.length())
+      {
+        break;
+      }
+      char e = json.charAt(pos++);
+      switch (e)
+      {
+        case 'b': s.append('\b'); break;
+        case 'f': s.append('\f'); break;
+        case 'n': s.append('\n'); break;
+        case 'r': s.append('\r'); break;
+        case 't': s.append('\t'); break;
+        case 'u':
+          if (pos + 4 > json.length())
+          {
+            throw error("four hex digits");
+          }
+          try
+          {
+            s.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+          }
+          catch (NumberFormatException ex)
+          {
+            throw error("four hex digits");
+          }
+          pos += 4;
+          break;
+        default: s.append(e); break;   // \" \\ and \/
+      }
+    }//end while
+    throw error("closing quote");
+  }//end string
+
+  private void space()
+  {
+    while (pos < json.length() && Character.isWhitespace(json.charAt(pos)))
+    {
+      ++pos;
+    }
+  }
+
+  /*
+  * Consume c after optional whitespace, return if it was there
+  */
+  private boolean skip(char c)
+  {
+    space();
+    if (pos < json.length() && json.charAt(pos) == c)
+    {
+      ++pos;
+      return true;
+    }
+    return false;
+  }
+
+  private void expect(char c)
+  {
+    if (!skip(c))
+    {
+      throw error("'" + c + "'");
+    }
+  }
+
+  private IllegalArgumentException error(String expected)
+  {
+    return new IllegalArgumentException("Expected " + expected + " at offset " + pos + " of profile JSON");
+  }
+}//end JsonRows
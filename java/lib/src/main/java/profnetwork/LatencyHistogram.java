@@ -0,0 +1,156 @@
+package profnetwork;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size latency histogram in the manner of HdrHistogram: values are
+ * counted in log-linear buckets, 128 per power of two, so every recorded
+ * value is kept to within 1% however long it is, in about 60KB.  Recording
+ * is lock-free and safe from any number of threads; percentiles read while
+ * others record are approximate.
+ *
+ * Values are in nanoseconds; negative values count as 0.
+ */
+public class LatencyHistogram
+{
+  // buckets per power of two is 1 << SUB_BITS
+  private static final int SUB_BITS = 7;
+  private static final int SUB = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /*
+  * Count one value, in nanoseconds
+  */
+  public void record(long nanos)
+  {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(index(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long m;
+    while (value > (m = max.get()) && !max.compareAndSet(m, value))
+    {
+      // another thread raised the maximum, compare again
+    }
+  }
+
+  /*
+  * Add the counts of another histogram to this one
+  */
+  public void add(LatencyHistogram other)
+  {
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      long c = other.counts.get(i);
+      if (c != 0)
+      {
+        counts.addAndGet(i, c);
+      }
+    }
+    count.addAndGet(other.count.get());
+    sum.addAndGet(other.sum.get());
+    long m, value = other.max.get();
+    while (value > (m = max.get()) && !max.compareAndSet(m, value))
+    {
+      // another thread raised the maximum, compare again
+    }
+  }
+
+  public long getCount()
+  {
+    return count.get();
+  }
+
+  public long getMax()
+  {
+    return max.get();
+  }
+
+  /*
+  * Return the sum of the recorded values, in nanoseconds
+  */
+  public long getSum()
+  {
+    return sum.get();
+  }
+
+  public double getMean()
+  {
+    long n = count.get();
+    return n == 0 ? 0 : (double) sum.get() / n;
+  }
+
+  /**
+  * Returns the value below which the given share of the recorded values
+  * fall, to within the bucket width (the bucket's upper end, at most the
+  * maximum recorded)
+  *
+  * @param percentile between 0 and 100, e.g. 99.9
+  * @return the value in nanoseconds, 0 when nothing was recorded
+  */
+  public long getValueAtPercentile(double percentile)
+  {
+    long n = count.get();
+    if (n == 0)
+    {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++)
+    {
+      seen += counts.get(i);
+      if (seen >= rank)
+      {
+        return Math.min(highest(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /*
+  * Return count, mean and percentiles in milliseconds, e.g. for a log line
+  */
+  public String toString()
+  {
+    return String.format("n=%d mean=%.3fms p50=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+      getCount(), getMean() / 1e6, getValueAtPercentile(50) / 1e6, getValueAtPercentile(99) / 1e6,
+      getValueAtPercentile(99.9) / 1e6, getMax() / 1e6);
+  }
+
+  //==============internals==============================================================================
+
+  /*
+  * Values below 2 * SUB have a bucket each; above, a value whose highest
+  * bit is SUB_BITS + k goes to the bucket of its top SUB_BITS + 1 bits
+  */
+  private static int index(long value)
+  {
+    if (value < 2 * SUB)
+    {
+      return (int) value;
+    }
+    int k = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+    return k * SUB + (int) (value >>> k);
+  }
+
+  /*
+  * Return the largest value counted in a bucket
+  */
+  private static long highest(int index)
+  {
+    if (index < 2 * SUB)
+    {
+      return index;
+    }
+    int k = index / SUB - 1;
+    long top = index - (long) k * SUB;
+    return top + 1 > (Long.MAX_VALUE >>> k) ? Long.MAX_VALUE : ((top + 1) << k) - 1;
+  }
+}//end LatencyHistogram
@@ -0,0 +1,47 @@
+package profnetwork;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Comparator;
+
+/**
+ * The userId and name of a user, as listed by the friend list
+ */
+public class Member
+{
+  // reads a (userId, name) result
+  public static final RowMapper<Member> MAPPER = new RowMapper<Member>()
+    {
+      public Member map(ResultSet rs) throws SQLException
+      {
+        return new Member(rs.getString(1).trim(), rs.getString(2));
+      }
+    };
+
+  public static final Comparator<Member> BY_USER_ID = new Comparator<Member>()
+    {
+      public int compare(Member a, Member b)
+      {
+        return a.userId.compareTo(b.userId);
+      }
+    };
+
+  private final String userId;
+  private final String name;
+
+  public Member(String userId, String name)
+  {
+    this.userId = userId;
+    this.name = name;
+  }
+
+  public String getUserId()
+  {
+    return userId;
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+}//end Member
@@ -0,0 +1,143 @@
+package profnetwork;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A row of the MESSAGE table
+ */
+public class Message
+{
+  // reads the columns of SELECT * FROM MESSAGE
+  public static final RowMapper<Message> MAPPER = new RowMapper<Message>()
+    {
+      public Message map(ResultSet rs) throws SQLException
+      {
+        return new Message(rs.getInt(1), trim(rs.getString(2)), trim(rs.getString(3)), rs.getString(4),
+          trim(rs.getString(5)), rs.getInt(6), trim(rs.getString(7)), rs.getTimestamp(8));
+      }
+    };
+
+  // how the client writes sendTime
+  static final DateTimeFormatter SEND_TIME = DateTimeFormatter.ofPattern("MM-dd-yyyy HH:mm:ss");
+
+  private final int msgId;
+  private final String senderId;
+  private final String receiverId;
+  private final String contents;
+  private final String sendTime;
+  private final int deleteStatus;
+  private final String status;
+  private final Timestamp sentAt;
+
+  public Message(int msgId, String senderId, String receiverId, String contents, String sendTime,
+                 int deleteStatus, String status)
+  {
+    this(msgId, senderId, receiverId, contents, sendTime, deleteStatus, status, null);
+  }
+
+  /**
+  * @param sentAt the partition key of the row, null when not known
+  */
+  public Message(int msgId, String senderId, String receiverId, String contents, String sendTime,
+                 int deleteStatus, String status, Timestamp sentAt)
+  {
+    this.msgId = msgId;
+    this.senderId = senderId;
+    this.receiverId = receiverId;
+    this.contents = contents;
+    this.sendTime = sendTime;
+    this.deleteStatus = deleteStatus;
+    this.status = status;
+    this.sentAt = sentAt;
+  }
+
+  public int getMsgId()
+  {
+    return msgId;
+  }
+
+  public String getSenderId()
+  {
+    return senderId;
+  }
+
+  public String getReceiverId()
+  {
+    return receiverId;
+  }
+
+  public String getContents()
+  {
+    return contents;
+  }
+
+  public String getSendTime()
+  {
+    return sendTime;
+  }
+
+  /*
+  * Return 0 if nobody deleted the message, 1 the sender, 2 the receiver, 3 both
+  */
+  public int getDeleteStatus()
+  {
+    return deleteStatus;
+  }
+
+  /*
+  * Return READ or UNREAD
+  */
+  public String getStatus()
+  {
+    return status;
+  }
+
+  /*
+  * Return the sentAt column, which picks the MESSAGE partition of the row; null when not known
+  */
+  public Timestamp getSentAt()
+  {
+    return sentAt;
+  }
+
+  /**
+  * Converts a sendTime to the sentAt timestamp the MESSAGE partitions are
+  * keyed on
+  *
+  * @param sendTime the time as MM-dd-yyyy HH:mm:ss
+  * @return the time, or null when sendTime is missing or in another format
+  */
+  public static Timestamp sentAt(String sendTime)
+  {
+    if (sendTime == null)
+    {
+      return null;
+    }
+    try
+    {
+      return Timestamp.valueOf(LocalDateTime.parse(sendTime.trim(), SEND_TIME));
+    }
+    catch (DateTimeParseException e)
+    {
+      return null;
+    }
+  }
+
+  /*
+  * Return a copy of this message with another status
+  */
+  Message withStatus(String status)
+  {
+    return new Message(msgId, senderId, receiverId, contents, sendTime, deleteStatus, status, sentAt);
+  }
+
+  private static String trim(String s)
+  {
+    return s == null ? null : s.trim();
+  }
+}//end Message
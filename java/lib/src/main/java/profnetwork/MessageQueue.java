@@ -0,0 +1,302 @@
+package profnetwork;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind delivery of new messages.  send only puts the message in a
+ * bounded queue; a background thread takes whatever has queued up, up to
+ * batchSize messages, gives them msgIds from an IdAllocator and inserts
+ * them as one batch in one transaction.  When the queue is
+ * full send waits for the writer, so a burst cannot outrun the database by
+ * more than the capacity.  flush waits until everything sent so far is
+ * stored; close flushes and stops the writer.
+ *
+ * A batch that fails is rolled back and its messages inserted again one
+ * transaction each, like BulkLoader does with a failed chunk, so a bad
+ * message does not take the others of its batch with it.  Only a message
+ * whose own insert fails is reported on stderr and counted as failed; it
+ * is not retried.
+ *
+ * Tuning (system properties):
+ *   profnetwork.messageQueue.capacity   messages waiting at most (default 1000)
+ *   profnetwork.messageQueue.batchSize  messages per insert batch (default 100)
+ */
+public class MessageQueue
+{
+  public static final int DEFAULT_CAPACITY =
+    Integer.getInteger("profnetwork.messageQueue.capacity", 1000).intValue();
+  public static final int DEFAULT_BATCH_SIZE =
+    Integer.getInteger("profnetwork.messageQueue.batchSize", 100).intValue();
+
+  // sentAt is the partition key, see sql/src/create_tables.sql
+  static final String INSERT_SQL =
+    "INSERT INTO MESSAGE (msgId, senderId, receiverId, contents, sendTime, deleteStatus, status, sentAt) "
+   +"VALUES (?,?,?,?,?,?,?,?)";
+  private static final long POLL_MS = 100;
+
+  private final ConnectionPool pool;
+  private final IdAllocator ids;
+  private final BlockingQueue<String[]> queue;
+  private final int batchSize;
+  private final Thread writer;
+
+  // messages accepted by send and messages the writer is done with; both guarded by progress
+  private final Object progress = new Object();
+  private long accepted = 0;
+  private long done = 0;
+  private boolean closed = false;
+
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong blockedSends = new AtomicLong();
+
+  public MessageQueue(ConnectionPool pool, IdAllocator ids)
+  {
+    this(pool, ids, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+  * Creates the queue and starts its writer thread
+  *
+  * @param pool where the writer borrows its connection for each batch
+  * @param ids gives out the msgIds
+  * @param capacity messages waiting at most before send blocks
+  * @param batchSize messages inserted together at most
+  */
+  public MessageQueue(ConnectionPool pool, IdAllocator ids, int capacity, int batchSize)
+  {
+    this.pool = pool;
+    this.ids = ids;
+    this.queue = new ArrayBlockingQueue<String[]>(Math.max(1, capacity));
+    this.batchSize = Math.max(1, batchSize);
+    this.writer = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        drain();
+      }
+    }, "message-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }//end MessageQueue
+
+  /**
+  * Queues a new unread message; waits while the queue is full
+  *
+  * @param sendTime when the message was sent, as MM-dd-yyyy HH:mm:ss
+  * @throws InterruptedException when interrupted while waiting for room
+  */
+  public void send(String senderid, String receiverid, String contents, String sendTime) throws InterruptedException
+  {
+    synchronized (progress)
+    {
+      if (closed)
+      {
+        throw new IllegalStateException("Message queue is closed");
+      }
+      ++accepted;
+    }
+
+    String[] message = { senderid, receiverid, contents, sendTime };
+    try
+    {
+      if (!queue.offer(message))
+      {
+        blockedSends.incrementAndGet();
+        queue.put(message);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      synchronized (progress)
+      {
+        --accepted;
+        progress.notifyAll();
+      }
+      throw e;
+    }
+  }//end send
+
+  /*
+  * Wait until every message sent so far is stored (or has failed); messages
+  * sent meanwhile by other threads are not waited for
+  */
+  public void flush() throws InterruptedException
+  {
+    synchronized (progress)
+    {
+      // a send interrupted meanwhile takes its message back from accepted
+      long target = accepted;
+      while (done < Math.min(target, accepted))
+      {
+        progress.wait();
+      }
+    }
+  }
+
+  /*
+  * Refuse further sends, store the queued messages and stop the writer
+  */
+  public void close() throws InterruptedException
+  {
+    synchronized (progress)
+    {
+      closed = true;
+    }
+    flush();
+    writer.join();
+  }
+
+  /*
+  * Return the queue counters
+  */
+  public String getStats()
+  {
+    return "Message queue: " + written.get() + " written in " + batches.get() + " batches, "
+      + failed.get() + " failed, " + queue.size() + " waiting, " + blockedSends.get() + " sends waited for room";
+  }
+
+  //==============writer thread==========================================================================
+
+  private void drain()
+  {
+    List<String[]> batch = new ArrayList<String[]>(batchSize);
+    while (true)
+    {
+      String[] first;
+      try
+      {
+        first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e)
+      {
+        first = null;
+      }
+      if (first == null)
+      {
+        synchronized (progress)
+        {
+          if (closed && done == accepted)
+          {
+            return;
+          }
+        }
+        continue;
+      }
+
+      batch.add(first);
+      queue.drainTo(batch, batchSize - 1);
+      write(batch);
+      synchronized (progress)
+      {
+        done += batch.size();
+        progress.notifyAll();
+      }
+      batch.clear();
+    }//end while
+  }//end drain
+
+  /*
+  * Insert a batch of messages in one transaction, or one by one if the batch fails
+  */
+  private void write(List<String[]> batch)
+  {
+    long start = Metrics.start();
+    Events.Sql event = new Events.Sql();
+    event.begin();
+    int stored = 0;
+    ConnectionPool.Handle conn = null;
+    try
+    {
+      // ids first: a refill borrows a connection of its own
+      int[] msgIds = new int[batch.size()];
+      for (int i = 0; i < msgIds.length; i++)
+      {
+        msgIds[i] = ids.next();
+      }
+
+      conn = pool.borrow();
+      Connection connection = conn.getConnection();
+      connection.setAutoCommit(false);
+
+      PreparedStatement insert = conn.getStatements().prepare(INSERT_SQL);
+      try
+      {
+        for (int i = 0; i < msgIds.length; i++)
+        {
+          bind(insert, msgIds[i], batch.get(i));
+          insert.addBatch();
+        }
+        insert.executeBatch();
+        connection.commit();
+        stored = msgIds.length;
+        batches.incrementAndGet();
+      }
+      catch (SQLException e)
+      {
+        connection.rollback();
+        insert.clearBatch();
+        stored = insertOneByOne(connection, insert, msgIds, batch);
+      }
+    }//end try
+    catch (SQLException e)
+    {
+      System.err.println("Failed to store " + (batch.size() - stored) + " message(s): " + e.getMessage());
+    }
+    finally
+    {
+      pool.release(conn);
+      written.addAndGet(stored);
+      failed.addAndGet(batch.size() - stored);
+      Metrics.stop(Metrics.SQL, INSERT_SQL, start, stored < batch.size());
+      event.finish(INSERT_SQL, stored, stored < batch.size());
+    }
+  }//end write
+
+  /*
+  * Insert the messages of a failed batch one transaction each; return how many were stored
+  */
+  private int insertOneByOne(Connection connection, PreparedStatement insert, int[] msgIds, List<String[]> batch)
+    throws SQLException
+  {
+    int stored = 0;
+    for (int i = 0; i < msgIds.length; i++)
+    {
+      String[] message = batch.get(i);
+      try
+      {
+        bind(insert, msgIds[i], message);
+        insert.executeUpdate();
+        connection.commit();
+        ++stored;
+      }
+      catch (SQLException e)
+      {
+        connection.rollback();
+        System.err.println("Failed to store message from " + message[0] + " to " + message[1] + ": " + e.getMessage());
+      }
+    }
+    return stored;
+  }//end insertOneByOne
+
+  private static void bind(PreparedStatement insert, int msgId, String[] message) throws SQLException
+  {
+    insert.setInt(1, msgId);
+    insert.setString(2, message[0]);
+    insert.setString(3, message[1]);
+    insert.setString(4, message[2]);
+    insert.setString(5, message[3]);
+    insert.setInt(6, 0);
+    insert.setString(7, "UNREAD");
+    insert.setTimestamp(8, Database.sentAt(message[3]));
+  }
+}//end MessageQueue
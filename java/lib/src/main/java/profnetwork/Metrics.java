@@ -0,0 +1,302 @@
+package profnetwork;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Latency distributions and error counts of the user operations and of
+ * every SQL statement, the statements tagged by their template (the SQL
+ * with ? placeholders, so the number of series stays that of the queries
+ * in the code).  Each series is a LatencyHistogram.  The screens of the
+ * command line client are their own kind: their time includes the user
+ * typing at the prompts, so it is not comparable with the server commands.
+ *
+ * Disabled by default; then start returns 0 without reading the clock and
+ * stop returns at once, so the instrumented paths cost a field test.  When
+ * enabled the series can be read in the Prometheus text format, from an
+ * HTTP endpoint at /metrics, and/or logged periodically, one line per
+ * series.
+ *
+ * Tuning (system properties):
+ *   profnetwork.metrics               record the metrics (default false)
+ *   profnetwork.metrics.port          serve them at http://localhost:port/metrics (default off)
+ *   profnetwork.metrics.logIntervalS  log them to stderr every so many seconds (default off)
+ */
+public final class Metrics
+{
+  public static final boolean ENABLED = "true".equalsIgnoreCase(System.getProperty("profnetwork.metrics"));
+  public static final int PORT = Integer.getInteger("profnetwork.metrics.port", 0).intValue();
+  public static final int LOG_INTERVAL_S = Integer.getInteger("profnetwork.metrics.logIntervalS", 0).intValue();
+
+  // series kinds, the metric names in the export
+  public static final String OPERATION = "operation";
+  public static final String SCREEN = "screen";
+  public static final String SQL = "sql";
+
+  // quantiles exported for each series
+  private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+  /*
+  * The latencies and failures of one operation or statement template
+  */
+  public static final class Series
+  {
+    final String kind;
+    final String name;
+    final LatencyHistogram latency = new LatencyHistogram();
+    final AtomicLong errors = new AtomicLong();
+
+    Series(String kind, String name)
+    {
+      this.kind = kind;
+      this.name = name;
+    }
+
+    public LatencyHistogram getLatency()
+    {
+      return latency;
+    }
+
+    public long getErrors()
+    {
+      return errors.get();
+    }
+  }//end Series
+
+  private static final Map<String, Series> series = new ConcurrentHashMap<String, Series>();
+  private static HttpServer http = null;
+  private static ScheduledExecutorService logger = null;
+
+  private Metrics()
+  {
+  }
+
+  /*
+  * Return the start time of a measurement, 0 when metrics are disabled
+  */
+  public static long start()
+  {
+    return ENABLED ? System.nanoTime() : 0;
+  }
+
+  /**
+  * Records the latency of an operation or statement started with start
+  *
+  * @param kind OPERATION, SCREEN or SQL
+  * @param name the operation, or the statement template
+  * @param start what start returned
+  * @param failed whether it ended with an error
+  */
+  public static void stop(String kind, String name, long start, boolean failed)
+  {
+    if (start == 0)
+    {
+      return;
+    }
+    Series s = get(kind, name);
+    s.latency.record(System.nanoTime() - start);
+    if (failed)
+    {
+      s.errors.incrementAndGet();
+    }
+  }
+
+  /**
+  * Records a latency measured by the caller; does nothing when metrics are disabled
+  *
+  * @param nanos the elapsed time
+  */
+  public static void record(String kind, String name, long nanos, boolean failed)
+  {
+    if (!ENABLED)
+    {
+      return;
+    }
+    Series s = get(kind, name);
+    s.latency.record(nanos);
+    if (failed)
+    {
+      s.errors.incrementAndGet();
+    }
+  }
+
+  /*
+  * Return the series of an operation or statement, created on first use
+  */
+  public static Series get(String kind, String name)
+  {
+    String key = kind + '\u0000' + name;
+    Series s = series.get(key);
+    if (s == null)
+    {
+      Series created = new Series(kind, name);
+      s = series.putIfAbsent(key, created);
+      if (s == null)
+      {
+        s = created;
+      }
+    }
+    return s;
+  }
+
+  /**
+  * Starts the exports configured with profnetwork.metrics.port and
+  * profnetwork.metrics.logIntervalS; does nothing when metrics are disabled
+  * or already exported
+  *
+  * @throws java.io.IOException when the HTTP port cannot be opened
+  */
+  public static synchronized void export() throws IOException
+  {
+    if (!ENABLED)
+    {
+      return;
+    }
+    if (PORT > 0 && http == null)
+    {
+      http = HttpServer.create(new InetSocketAddress("127.0.0.1", PORT), 0);
+      http.createContext("/metrics", new HttpHandler()
+      {
+        public void handle(HttpExchange exchange) throws IOException
+        {
+          byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+          exchange.sendResponseHeaders(200, body.length);
+          OutputStream out = exchange.getResponseBody();
+          out.write(body);
+          out.close();
+        }
+      });
+      http.start();
+    }
+    if (LOG_INTERVAL_S > 0 && logger == null)
+    {
+      logger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+      {
+        public Thread newThread(Runnable r)
+        {
+          Thread t = new Thread(r, "metrics-log");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+      logger.scheduleAtFixedRate(new Runnable()
+      {
+        public void run()
+        {
+          System.err.print(toLog());
+        }
+      }, LOG_INTERVAL_S, LOG_INTERVAL_S, TimeUnit.SECONDS);
+    }
+  }//end export
+
+  /*
+  * Stop the HTTP endpoint and the periodic log
+  */
+  public static synchronized void stopExport()
+  {
+    if (http != null)
+    {
+      http.stop(0);
+      http = null;
+    }
+    if (logger != null)
+    {
+      logger.shutdownNow();
+      logger = null;
+    }
+  }
+
+  /*
+  * Return every series as one line, sorted by kind and name
+  */
+  public static String toLog()
+  {
+    StringBuilder log = new StringBuilder();
+    for (Series s : sorted())
+    {
+      log.append("metrics ").append(s.kind).append(" \"").append(s.name).append("\" ")
+         .append(s.latency).append(" errors=").append(s.errors.get()).append('\n');
+    }
+    return log.toString();
+  }
+
+  /*
+  * Return every series in the Prometheus text format: a summary of the latency in seconds and an error counter
+  */
+  public static String toPrometheus()
+  {
+    StringBuilder out = new StringBuilder();
+    List<Series> all = sorted();
+    for (String kind : new String[] { OPERATION, SCREEN, SQL })
+    {
+      // each metric family's samples together, after its TYPE line
+      String metric = "profnetwork_" + kind;
+      String labelName = kind.equals(SQL) ? "query" : kind;
+      StringBuilder errors = new StringBuilder();
+      for (Series s : all)
+      {
+        if (!s.kind.equals(kind))
+        {
+          continue;
+        }
+        String label = labelName + "=\"" + escape(s.name) + "\"";
+        if (errors.length() == 0)
+        {
+          out.append("# TYPE ").append(metric).append("_seconds summary\n");
+          errors.append("# TYPE ").append(metric).append("_errors_total counter\n");
+        }
+        for (double q : QUANTILES)
+        {
+          out.append(metric).append("_seconds{").append(label).append(",quantile=\"").append(q).append("\"} ")
+             .append(s.latency.getValueAtPercentile(q * 100) / 1e9).append('\n');
+        }
+        out.append(metric).append("_seconds_sum{").append(label).append("} ").append(s.latency.getSum() / 1e9).append('\n');
+        out.append(metric).append("_seconds_count{").append(label).append("} ").append(s.latency.getCount()).append('\n');
+        errors.append(metric).append("_errors_total{").append(label).append("} ").append(s.errors.get()).append('\n');
+      }//end for
+      out.append(errors);
+    }//end for
+    return out.toString();
+  }
+
+  //==============internals==============================================================================
+
+  private static List<Series> sorted()
+  {
+    List<Series> all = new ArrayList<Series>(series.values());
+    Collections.sort(all, new java.util.Comparator<Series>()
+    {
+      public int compare(Series a, Series b)
+      {
+        int c = a.kind.compareTo(b.kind);
+        return c != 0 ? c : a.name.compareTo(b.name);
+      }
+    });
+    return all;
+  }
+
+  /*
+  * Escape a label value; line breaks and runs of spaces in SQL become one space
+  */
+  private static String escape(String value)
+  {
+    return value.replaceAll("\\s+", " ").trim().replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+}//end Metrics
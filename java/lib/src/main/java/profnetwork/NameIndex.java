@@ -0,0 +1,512 @@
+package profnetwork;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory trigram index of USR.name for the name search.  Every user gets
+ * a dense int id; each three-character sequence of a lower-cased name has a
+ * posting list of the ids whose name contains it, kept as a sorted int
+ * array.  A search intersects the posting lists of the search term's
+ * trigrams, starting from the shortest, and checks the few candidates left
+ * against the names, so a lookup costs about the length of the rarest
+ * trigram's list instead of a scan of USR.  Terms shorter than three
+ * characters have no trigram and are matched against every name.
+ *
+ * Matches are ranked: the whole name first, then names starting with the
+ * term, then names with a word starting with it, then any other substring;
+ * shorter names first within a rank.  A Page keeps all the ranked
+ * matches of its search, so the next page is cut from them instead of
+ * searching and sorting again, unless a user was added in between.
+ * Readers and writers are coordinated with a read/write lock.
+ */
+public class NameIndex
+{
+  private static final int FETCH_SIZE = 10000;
+
+  // match ranks, best first
+  public static final int EXACT = 0;
+  public static final int PREFIX = 1;
+  public static final int WORD_PREFIX = 2;
+  public static final int SUBSTRING = 3;
+
+  /**
+   * One page of ranked search results
+   */
+  public static class Page
+  {
+    private final int total;
+    private final int offset;
+    private final String[] userIds;
+    private final String[] names;
+
+    // the search this page is of and all its ranked matches, null for pages not from an index
+    private final String key;
+    private final boolean prefixOnly;
+    private final long[] matches;
+    private final NameIndex index;
+    private final int version;
+
+    Page(int total, int offset, String[] userIds, String[] names)
+    {
+      this(total, offset, userIds, names, null, false, null, null, 0);
+    }
+
+    private Page(int total, int offset, String[] userIds, String[] names,
+                 String key, boolean prefixOnly, long[] matches, NameIndex index, int version)
+    {
+      this.total = total;
+      this.offset = offset;
+      this.userIds = userIds;
+      this.names = names;
+      this.key = key;
+      this.prefixOnly = prefixOnly;
+      this.matches = matches;
+      this.index = index;
+      this.version = version;
+    }
+
+    /*
+    * Return the number of matches on the pages before this one
+    */
+    public int getOffset()
+    {
+      return offset;
+    }
+
+    /*
+    * Return the number of matches on all pages
+    */
+    public int getTotal()
+    {
+      return total;
+    }
+
+    public int size()
+    {
+      return userIds.length;
+    }
+
+    public String getUserId(int i)
+    {
+      return userIds[i];
+    }
+
+    public String getName(int i)
+    {
+      return names[i];
+    }
+  }//end Page
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // users, by dense id; keys holds the lower-cased name that is matched
+  private String[] userIds = new String[1024];
+  private String[] names = new String[1024];
+  private String[] keys = new String[1024];
+  private int userCount = 0;
+
+  // open addressing hash table of trigram -> posting list number + 1 (0 marks an empty slot)
+  private long[] trigrams = new long[4096];
+  private int[] slots = new int[4096];
+  private int trigramCount = 0;
+
+  // posting lists, by number: the first counts[i] entries of postings[i], in increasing id order
+  private int[][] postings = new int[2048][];
+  private int[] counts = new int[2048];
+
+  // bumped by every insert; the matches a Page keeps are current while it is unchanged
+  private int version = 0;
+
+  /**
+  * Builds the index from the USR table
+  *
+  * @param db the database to read from
+  * @return the loaded index
+  * @throws java.sql.SQLException when the table cannot be read
+  */
+  public static NameIndex load(Database db) throws SQLException
+  {
+    NameIndex index = new NameIndex();
+    ConnectionPool pool = db.getPool();
+    ConnectionPool.Handle conn = pool.borrow();
+    try
+    {
+      // a transaction lets the driver fetch large results in batches
+      conn.getConnection().setAutoCommit(false);
+
+      PreparedStatement stmt = conn.getStatements().prepare("SELECT U.userId, U.name FROM USR U");
+      stmt.setFetchSize(FETCH_SIZE);
+      ResultSet rs = stmt.executeQuery();
+      try
+      {
+        while (rs.next())
+        {
+          index.insert(rs.getString(1).trim(), rs.getString(2));
+        }
+      }
+      finally
+      {
+        rs.close();
+      }
+    }//end try
+    finally
+    {
+      pool.release(conn);
+    }
+    return index;
+  }//end load
+
+  public int getUserCount()
+  {
+    lock.readLock().lock();
+    try
+    {
+      return userCount;
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  /*
+  * Add a new user, e.g. after a sign up
+  */
+  public void addUser(String userId, String name)
+  {
+    lock.writeLock().lock();
+    try
+    {
+      insert(userId, name);
+    }
+    finally
+    {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+  * Finds the users whose name contains a term, ignoring case
+  *
+  * @param term the text looked for
+  * @param prefixOnly only match the term at the start of the name or of one of its words
+  * @param offset number of ranked matches to skip
+  * @param limit maximum number of matches returned
+  * @return the requested page of matches, best first
+  */
+  public Page search(String term, boolean prefixOnly, int offset, int limit)
+  {
+    String key = term.trim().toLowerCase(Locale.ROOT);
+    lock.readLock().lock();
+    try
+    {
+      return page(key, prefixOnly, rankMatches(key, prefixOnly), offset, limit);
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+  * Returns the page of matches after a previous one.  When the previous
+  * page is of the same search on this index and no user was added since,
+  * the page is cut from the matches it keeps; otherwise the term is
+  * searched again.
+  *
+  * @param term the text looked for
+  * @param prefixOnly only match the term at the start of the name or of one of its words
+  * @param after the previous page, null for the first one
+  * @param limit maximum number of matches returned
+  * @return the requested page of matches, best first
+  */
+  public Page search(String term, boolean prefixOnly, Page after, int limit)
+  {
+    String key = term.trim().toLowerCase(Locale.ROOT);
+    int offset = after == null ? 0 : after.getOffset() + after.size();
+    lock.readLock().lock();
+    try
+    {
+      long[] matches;
+      if (after != null && after.index == this && after.version == version
+          && after.prefixOnly == prefixOnly && key.equals(after.key))
+      {
+        matches = after.matches;
+      }
+      else
+      {
+        matches = rankMatches(key, prefixOnly);
+      }
+      return page(key, prefixOnly, matches, offset, limit);
+    }
+    finally
+    {
+      lock.readLock().unlock();
+    }
+  }//end search
+
+  //==============internals: callers hold the lock=======================================================
+
+  /*
+  * Return the rank, name length and id of every match packed into one long each, best first
+  */
+  private long[] rankMatches(String key, boolean prefixOnly)
+  {
+    int[] candidates = candidates(key);
+    int n = candidates == null ? userCount : candidates.length;
+
+    long[] matches = new long[Math.min(n, 1024)];
+    int total = 0;
+    for (int i = 0; i < n; i++)
+    {
+      int u = candidates == null ? i : candidates[i];
+      if (keys[u] == null)
+      {
+        continue;
+      }
+      int rank = rank(keys[u], key);
+      if (rank < 0 || (prefixOnly && rank == SUBSTRING))
+      {
+        continue;
+      }
+      if (total == matches.length)
+      {
+        matches = Arrays.copyOf(matches, total * 2);
+      }
+      matches[total++] = ((long) rank << 56) | ((long) Math.min(keys[u].length(), 0xFFFFFF) << 32) | u;
+    }
+    Arrays.sort(matches, 0, total);
+    return total == matches.length ? matches : Arrays.copyOf(matches, total);
+  }//end rankMatches
+
+  /*
+  * Return the page of the ranked matches starting at offset
+  */
+  private Page page(String key, boolean prefixOnly, long[] matches, int offset, int limit)
+  {
+    int total = matches.length;
+    int from = Math.max(0, Math.min(offset, total));
+    int size = Math.max(0, Math.min(limit, total - from));
+    String[] pageIds = new String[size];
+    String[] pageNames = new String[size];
+    for (int i = 0; i < size; i++)
+    {
+      int u = (int) matches[from + i];
+      pageIds[i] = userIds[u];
+      pageNames[i] = names[u];
+    }
+    return new Page(total, from, pageIds, pageNames, key, prefixOnly, matches, this, version);
+  }
+
+  /*
+  * Return the ids whose name has every trigram of key, or null when key is too short to have one
+  */
+  private int[] candidates(String key)
+  {
+    int grams = key.length() - 2;
+    if (grams <= 0)
+    {
+      return null;
+    }
+
+    int[] lists = new int[grams];
+    int distinct = 0;
+    for (int i = 0; i < grams; i++)
+    {
+      int p = find(trigram(key, i));
+      if (p < 0)
+      {
+        return new int[0];
+      }
+      boolean seen = false;
+      for (int j = 0; j < distinct && !seen; j++)
+      {
+        seen = lists[j] == p;
+      }
+      if (!seen)
+      {
+        lists[distinct++] = p;
+      }
+    }
+
+    // shortest list first, it bounds the work
+    for (int i = 1; i < distinct; i++)
+    {
+      for (int j = i; j > 0 && counts[lists[j]] < counts[lists[j - 1]]; j--)
+      {
+        int t = lists[j];
+        lists[j] = lists[j - 1];
+        lists[j - 1] = t;
+      }
+    }
+
+    int[] result = Arrays.copyOf(postings[lists[0]], counts[lists[0]]);
+    int size = result.length;
+    for (int l = 1; l < distinct && size > 0; l++)
+    {
+      int[] list = postings[lists[l]];
+      int count = counts[lists[l]];
+      int kept = 0;
+      int from = 0;
+      for (int i = 0; i < size; i++)
+      {
+        int at = Arrays.binarySearch(list, from, count, result[i]);
+        if (at >= 0)
+        {
+          result[kept++] = result[i];
+          from = at + 1;
+        }
+        else
+        {
+          from = -at - 1;
+        }
+      }
+      size = kept;
+    }
+    return size == result.length ? result : Arrays.copyOf(result, size);
+  }//end candidates
+
+  /*
+  * Return how well name matches key, or -1 if it does not contain it
+  */
+  private static int rank(String name, String key)
+  {
+    int at = name.indexOf(key);
+    if (at < 0)
+    {
+      return -1;
+    }
+    if (at == 0)
+    {
+      return name.length() == key.length() ? EXACT : PREFIX;
+    }
+    for (; at > 0; at = name.indexOf(key, at + 1))
+    {
+      if (!Character.isLetterOrDigit(name.charAt(at - 1)))
+      {
+        return WORD_PREFIX;
+      }
+    }
+    return SUBSTRING;
+  }
+
+  private static long trigram(String key, int i)
+  {
+    return ((long) key.charAt(i) << 32) | ((long) key.charAt(i + 1) << 16) | key.charAt(i + 2);
+  }
+
+  private void insert(String userId, String name)
+  {
+    if (userCount == userIds.length)
+    {
+      int capacity = userCount * 2;
+      userIds = Arrays.copyOf(userIds, capacity);
+      names = Arrays.copyOf(names, capacity);
+      keys = Arrays.copyOf(keys, capacity);
+    }
+    int u = userCount++;
+    ++version;
+    userIds[u] = userId;
+    names[u] = name;
+    if (name == null)
+    {
+      return;
+    }
+
+    String key = name.trim().toLowerCase(Locale.ROOT);
+    keys[u] = key;
+    for (int i = 0; i + 2 < key.length(); i++)
+    {
+      int p = intern(trigram(key, i));
+      // ids only grow, so a repeated trigram of this name is the last entry
+      if (counts[p] > 0 && postings[p][counts[p] - 1] == u)
+      {
+        continue;
+      }
+      if (counts[p] == postings[p].length)
+      {
+        postings[p] = Arrays.copyOf(postings[p], counts[p] * 2);
+      }
+      postings[p][counts[p]++] = u;
+    }
+  }//end insert
+
+  private int find(long gram)
+  {
+    int mask = slots.length - 1;
+    int i = hash(gram) & mask;
+    while (slots[i] != 0)
+    {
+      if (trigrams[i] == gram)
+      {
+        return slots[i] - 1;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  /*
+  * Return the posting list number of a trigram, adding an empty list if new
+  */
+  private int intern(long gram)
+  {
+    int p = find(gram);
+    if (p >= 0)
+    {
+      return p;
+    }
+
+    if (trigramCount == postings.length)
+    {
+      postings = Arrays.copyOf(postings, trigramCount * 2);
+      counts = Arrays.copyOf(counts, trigramCount * 2);
+    }
+    p = trigramCount++;
+    postings[p] = new int[4];
+    insertSlot(gram, p);
+    if (trigramCount * 2 > slots.length)
+    {
+      rehash(slots.length * 2);
+    }
+    return p;
+  }//end intern
+
+  private void rehash(int capacity)
+  {
+    long[] oldTrigrams = trigrams;
+    int[] oldSlots = slots;
+    trigrams = new long[capacity];
+    slots = new int[capacity];
+    for (int i = 0; i < oldSlots.length; i++)
+    {
+      if (oldSlots[i] != 0)
+      {
+        insertSlot(oldTrigrams[i], oldSlots[i] - 1);
+      }
+    }
+  }
+
+  private void insertSlot(long gram, int p)
+  {
+    int mask = slots.length - 1;
+    int i = hash(gram) & mask;
+    while (slots[i] != 0)
+    {
+      i = (i + 1) & mask;
+    }
+    trigrams[i] = gram;
+    slots[i] = p + 1;
+  }
+
+  private static int hash(long gram)
+  {
+    long h = gram * 0x9E3779B97F4A7C15L;
+    return (int) (h >>> 32);
+  }
+}//end NameIndex
@@ -0,0 +1,190 @@
+package profnetwork;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything ViewProfile shows of a user: the USR row, the WORK_EXPR rows
+ * and the EDUCATIONAL_DETAILS rows.  Immutable, so one instance can be
+ * cached and shared by all threads (see ProfileCache).
+ */
+public class Profile
+{
+  // reads a row of the json profile query: the USR columns, then the WORK_EXPR and EDUCATIONAL_DETAILS rows as JSON
+  public static final RowMapper<Profile> JSON_MAPPER = new RowMapper<Profile>()
+    {
+      public Profile map(ResultSet rs) throws SQLException
+      {
+        List<Work> work = new ArrayList<Work>();
+        List<Education> education = new ArrayList<Education>();
+        try
+        {
+          for (String[] w : JsonRows.parse(rs.getString(6)))
+          {
+            work.add(new Work(w[0], w[1], w[2], w[3], w[4]));
+          }
+          for (String[] e : JsonRows.parse(rs.getString(7)))
+          {
+            education.add(new Education(e[0], e[1], e[2], e[3], e[4]));
+          }
+        }
+        catch (RuntimeException e)
+        {
+          // malformed JSON or a row with fewer than five values
+          throw new SQLException("Cannot read profile of " + rs.getString(1) + ": " + e.getMessage());
+        }
+        return new Profile(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5),
+                           work, education);
+      }
+    };
+
+  /*
+  * One WORK_EXPR row
+  */
+  public static class Work
+  {
+    private final String company;
+    private final String role;
+    private final String location;
+    private final String startDate;
+    private final String endDate;
+
+    public Work(String company, String role, String location, String startDate, String endDate)
+    {
+      this.company = company;
+      this.role = role;
+      this.location = location;
+      this.startDate = startDate;
+      this.endDate = endDate;
+    }
+
+    public String getCompany()
+    {
+      return company;
+    }
+
+    public String getRole()
+    {
+      return role;
+    }
+
+    public String getLocation()
+    {
+      return location;
+    }
+
+    public String getStartDate()
+    {
+      return startDate;
+    }
+
+    public String getEndDate()
+    {
+      return endDate;
+    }
+  }//end Work
+
+  /*
+  * One EDUCATIONAL_DETAILS row
+  */
+  public static class Education
+  {
+    private final String institution;
+    private final String major;
+    private final String degree;
+    private final String startDate;
+    private final String endDate;
+
+    public Education(String institution, String major, String degree, String startDate, String endDate)
+    {
+      this.institution = institution;
+      this.major = major;
+      this.degree = degree;
+      this.startDate = startDate;
+      this.endDate = endDate;
+    }
+
+    public String getInstitution()
+    {
+      return institution;
+    }
+
+    public String getMajor()
+    {
+      return major;
+    }
+
+    public String getDegree()
+    {
+      return degree;
+    }
+
+    public String getStartDate()
+    {
+      return startDate;
+    }
+
+    public String getEndDate()
+    {
+      return endDate;
+    }
+  }//end Education
+
+  private final String userId;
+  private final String password;
+  private final String email;
+  private final String name;
+  private final String dateOfBirth;
+  private final List<Work> work;
+  private final List<Education> education;
+
+  public Profile(String userId, String password, String email, String name, String dateOfBirth,
+                 List<Work> work, List<Education> education)
+  {
+    this.userId = userId;
+    this.password = password;
+    this.email = email;
+    this.name = name;
+    this.dateOfBirth = dateOfBirth;
+    this.work = Collections.unmodifiableList(work);
+    this.education = Collections.unmodifiableList(education);
+  }
+
+  public String getUserId()
+  {
+    return userId;
+  }
+
+  public String getPassword()
+  {
+    return password;
+  }
+
+  public String getEmail()
+  {
+    return email;
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  public String getDateOfBirth()
+  {
+    return dateOfBirth;
+  }
+
+  public List<Work> getWork()
+  {
+    return work;
+  }
+
+  public List<Education> getEducation()
+  {
+    return education;
+  }
+}//end Profile
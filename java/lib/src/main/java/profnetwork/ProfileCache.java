@@ -0,0 +1,174 @@
+package profnetwork;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recently viewed profiles, so that opening a friend's profile again, or
+ * reading the logged-in user's account, needs no query at all.  A miss
+ * reads the whole profile, in one round trip unless profnetwork.profileQuery
+ * is separate (see Database.readProfile).
+ * Entries expire ttlMs after they were read, so changes made by other
+ * clients show up within that time; changes made through this Database
+ * (changePassword) invalidate the entry at once.  The least recently used
+ * profile is dropped when more than maxUsers are cached.  Users that do
+ * not exist are not cached.
+ *
+ * Tuning (system properties):
+ *   profnetwork.profileCache.users  profiles cached at most (default 1000)
+ *   profnetwork.profileCache.ttlMs  age after which a profile is read again (default 60000)
+ */
+public class ProfileCache
+{
+  public static final int DEFAULT_MAX_USERS =
+    Integer.getInteger("profnetwork.profileCache.users", 1000).intValue();
+  public static final long DEFAULT_TTL_MS =
+    Long.getLong("profnetwork.profileCache.ttlMs", 60000L).longValue();
+
+  /*
+  * A cached profile and when it was read
+  */
+  private static class Cached
+  {
+    final Profile profile;
+    final long loadedAt;
+
+    Cached(Profile profile, long loadedAt)
+    {
+      this.profile = profile;
+      this.loadedAt = loadedAt;
+    }
+  }
+
+  private final Database db;
+  private final long ttlNanos;
+  private final LinkedHashMap<String, Cached> profiles;
+
+  // bumped by every invalidation, so a load that raced with one is not cached; guarded by profiles
+  private long generation = 0;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong expired = new AtomicLong();
+  private final AtomicLong loadNanos = new AtomicLong();
+
+  public ProfileCache(Database db)
+  {
+    this(db, DEFAULT_MAX_USERS, DEFAULT_TTL_MS);
+  }
+
+  /**
+  * @param db where the profiles are read
+  * @param maxUsers profiles kept at most
+  * @param ttlMs age in milliseconds after which a profile is read again
+  */
+  public ProfileCache(Database db, final int maxUsers, long ttlMs)
+  {
+    this.db = db;
+    this.ttlNanos = ttlMs * 1000000L;
+    this.profiles = new LinkedHashMap<String, Cached>(16, 0.75f, true)
+    {
+      protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest)
+      {
+        return size() > maxUsers;
+      }
+    };
+  }
+
+  /**
+  * Returns the profile of a user, from the cache while it is fresh
+  *
+  * @return the profile, or null when there is no such user
+  * @throws java.sql.SQLException when failed to read the profile
+  */
+  public Profile get(String username) throws SQLException
+  {
+    long now = System.nanoTime();
+    long seen;
+    synchronized (profiles)
+    {
+      Cached entry = profiles.get(username);
+      if (entry != null && now - entry.loadedAt < ttlNanos)
+      {
+        hits.incrementAndGet();
+        return entry.profile;
+      }
+      if (entry != null)
+      {
+        expired.incrementAndGet();
+      }
+      seen = generation;
+    }
+
+    // read outside the lock; two threads missing the same user both read it
+    misses.incrementAndGet();
+    Profile profile = db.readProfile(username);
+    long loaded = System.nanoTime();
+    loadNanos.addAndGet(loaded - now);
+
+    synchronized (profiles)
+    {
+      if (profile == null)
+      {
+        profiles.remove(username);
+      }
+      else if (seen == generation)
+      {
+        profiles.put(username, new Cached(profile, loaded));
+      }
+    }
+    return profile;
+  }//end get
+
+  /*
+  * Drop the cached profile of a user whose data changed
+  */
+  public void invalidate(String username)
+  {
+    synchronized (profiles)
+    {
+      ++generation;
+      profiles.remove(username);
+    }
+  }
+
+  /*
+  * Drop every cached profile, e.g. after an import
+  */
+  public void invalidateAll()
+  {
+    synchronized (profiles)
+    {
+      ++generation;
+      profiles.clear();
+    }
+  }
+
+  /*
+  * Return the share of lookups answered from the cache
+  */
+  public double getHitRatio()
+  {
+    long h = hits.get();
+    long total = h + misses.get();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  /*
+  * Return the hit ratio and the average time to read a missing profile
+  */
+  public String getStats()
+  {
+    int size;
+    synchronized (profiles)
+    {
+      size = profiles.size();
+    }
+    long m = misses.get();
+    return "profile cache: " + size + " profiles, " + hits.get() + " hits, " + m + " misses ("
+      + expired.get() + " expired), " + String.format("hit ratio %.1f%%", 100 * getHitRatio())
+      + (m == 0 ? "" : String.format(", avg load %.3fms", loadNanos.get() / 1e6 / m));
+  }
+}//end ProfileCache
@@ -0,0 +1,192 @@
+package profnetwork;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Bidirectional breadth first search over a FriendGraph.  The search grows
+ * one frontier from each end, always expanding the smaller one by a full
+ * level, and stops as soon as the two meet or the level budget is spent.
+ * For a 3-level check this visits roughly the square root of what a one
+ * sided search does.
+ *
+ * Visited users are kept in two BitSets and the frontiers in int arrays,
+ * all reused between searches; only the bits actually set are cleared
+ * afterwards.  An instance is not thread safe, FriendGraph keeps one per
+ * thread.
+ */
+public class Reachability
+{
+  private final BitSet seenForward = new BitSet();
+  private final BitSet seenBackward = new BitSet();
+  private int[] queueForward = new int[16];
+  private int[] queueBackward = new int[16];
+  private int[] parentForward = new int[16];
+  private int[] parentBackward = new int[16];
+  private int forwardTail = 0;
+  private int backwardTail = 0;
+
+  /**
+  * Finds a path of at most maxLevel friendships between two users.
+  * The caller must hold the graph's read lock.
+  *
+  * @param graph the friendship graph
+  * @param source dense id of the first user
+  * @param target dense id of the second user
+  * @param maxLevel the maximum number of friendships on the path
+  * @return the dense ids on the path from source to target, or null
+  */
+  int[] search(FriendGraph graph, int source, int target, int maxLevel)
+  {
+    if (maxLevel < 0)
+    {
+      return null;
+    }
+    if (source == target)
+    {
+      return new int[] { source };
+    }
+
+    ensureCapacity(graph.size());
+    try
+    {
+      forwardTail = 0;
+      backwardTail = 0;
+      queueForward[forwardTail++] = source;
+      queueBackward[backwardTail++] = target;
+      seenForward.set(source);
+      seenBackward.set(target);
+      parentForward[source] = -1;
+      parentBackward[target] = -1;
+
+      int forwardHead = 0, backwardHead = 0;
+      int forwardLevels = 0, backwardLevels = 0;
+      while (forwardLevels + backwardLevels < maxLevel
+             && forwardHead < forwardTail && backwardHead < backwardTail)
+      {
+        int meet;
+        if (forwardTail - forwardHead <= backwardTail - backwardHead)
+        {
+          int levelEnd = forwardTail;
+          meet = expand(graph, true, forwardHead, levelEnd);
+          forwardHead = levelEnd;
+          ++forwardLevels;
+        }
+        else
+        {
+          int levelEnd = backwardTail;
+          meet = expand(graph, false, backwardHead, levelEnd);
+          backwardHead = levelEnd;
+          ++backwardLevels;
+        }
+        if (meet >= 0)
+        {
+          return path(meet);
+        }
+      }
+      return null;
+    }
+    finally
+    {
+      for (int i = 0; i < forwardTail; i++)
+      {
+        seenForward.clear(queueForward[i]);
+      }
+      for (int i = 0; i < backwardTail; i++)
+      {
+        seenBackward.clear(queueBackward[i]);
+      }
+    }
+  }//end search
+
+  /*
+  * Expand one level of a frontier; return the user where the searches meet, or -1
+  */
+  private int expand(FriendGraph graph, boolean forward, int head, int levelEnd)
+  {
+    int[] queue = forward ? queueForward : queueBackward;
+    int[] parent = forward ? parentForward : parentBackward;
+    BitSet seen = forward ? seenForward : seenBackward;
+    BitSet other = forward ? seenBackward : seenForward;
+    int tail = forward ? forwardTail : backwardTail;
+
+    int meet = -1;
+    for (int i = head; i < levelEnd && meet < 0; i++)
+    {
+      int u = queue[i];
+      int deg = graph.degree(u);
+      for (int j = 0; j < deg; j++)
+      {
+        int v = graph.neighbor(u, j);
+        if (seen.get(v))
+        {
+          continue;
+        }
+        seen.set(v);
+        parent[v] = u;
+        queue[tail++] = v;
+        if (other.get(v))
+        {
+          meet = v;
+          break;
+        }
+      }
+    }
+
+    if (forward)
+    {
+      forwardTail = tail;
+    }
+    else
+    {
+      backwardTail = tail;
+    }
+    return meet;
+  }//end expand
+
+  /*
+  * Join the two half paths at the meeting user
+  */
+  private int[] path(int meet)
+  {
+    int length = 0;
+    for (int u = meet; u >= 0; u = parentForward[u])
+    {
+      ++length;
+    }
+    for (int u = parentBackward[meet]; u >= 0; u = parentBackward[u])
+    {
+      ++length;
+    }
+
+    int[] path = new int[length];
+    int i = 0;
+    for (int u = meet; u >= 0; u = parentForward[u])
+    {
+      path[i++] = u;
+    }
+    for (int a = 0, b = i - 1; a < b; a++, b--)
+    {
+      int t = path[a];
+      path[a] = path[b];
+      path[b] = t;
+    }
+    for (int u = parentBackward[meet]; u >= 0; u = parentBackward[u])
+    {
+      path[i++] = u;
+    }
+    return path;
+  }//end path
+
+  private void ensureCapacity(int n)
+  {
+    if (queueForward.length < n)
+    {
+      int capacity = Math.max(n, queueForward.length * 2);
+      queueForward = Arrays.copyOf(queueForward, capacity);
+      queueBackward = Arrays.copyOf(queueBackward, capacity);
+      parentForward = Arrays.copyOf(parentForward, capacity);
+      parentBackward = Arrays.copyOf(parentBackward, capacity);
+    }
+  }
+}//end Reachability
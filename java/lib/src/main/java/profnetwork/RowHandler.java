@@ -0,0 +1,19 @@
+package profnetwork;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Receives the rows of a streamed query one at a time, see Database.forEach.
+ * Implementations read the columns of the current row only and must not move
+ * the cursor or keep the result set.
+ */
+public interface RowHandler
+{
+  /**
+  * @param rs the result set, positioned on the row
+  * @return false to stop reading rows
+  * @throws java.sql.SQLException when a column cannot be read
+  */
+  boolean handle(ResultSet rs) throws SQLException;
+}//end RowHandler
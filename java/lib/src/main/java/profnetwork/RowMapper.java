@@ -0,0 +1,14 @@
+package profnetwork;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Turns the current row of a result set into an object, see
+ * Database.queryForList.  Implementations read the columns of the current
+ * row only and must not move the cursor.
+ */
+public interface RowMapper<T>
+{
+  T map(ResultSet rs) throws SQLException;
+}//end RowMapper
@@ -0,0 +1,590 @@
+package profnetwork;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the ProfNetwork operations to many users at once over a line
+ * based TCP protocol.  Every connection is a session with its own logged in
+ * user and runs on a thread of its own: a virtual thread on Java 21 and
+ * later, a pooled platform thread before that.  All sessions share one
+ * Database, so its connection pool bounds the load on Postgres however many
+ * sessions are open.
+ *
+ * A request is one line, the command and its arguments separated by tabs;
+ * without a tab the arguments are split at spaces, the last one taking the
+ * rest of the line (so "SEND bob hello there" works from nc or telnet).  A
+ * reply is "OK n" followed by n result lines with tab separated fields, or
+ * one "ERR message" line.
+ *
+ *   LOGIN user password       start the session as user
+ *   LOGOUT
+ *   SEARCH name               first page of the users whose name contains name
+ *   SEARCH                    next page of the last search
+ *   REQUEST user              send a friend request (same rules as the client)
+ *   REQUESTS                  users waiting for an answer to their request
+ *   ACCEPT user, REJECT user  answer a friend request
+ *   FRIENDS [after]           a page of friends, after the userId given
+ *   PROFILE user              overview, work experience and education
+ *   SEND user text            send a message
+ *   MESSAGES [after]          a page of messages, newest first, after the msgId given;
+ *                             the first page marks them read
+ *   DELETE msgId              delete a message for this user
+ *   HELP, QUIT
+ *
+ * Tuning (system properties):
+ *   profnetwork.server.bind            address listened on (default 127.0.0.1)
+ *   profnetwork.server.maxSessions     sessions open at most (default 10000)
+ *   profnetwork.server.idleTimeoutMs   close sessions idle longer (default 600000)
+ *   profnetwork.server.virtualThreads  use virtual threads when available (default true)
+ *   profnetwork.pageSize               results per page (default 20)
+ */
+public class Server
+{
+  public static final String DEFAULT_BIND = System.getProperty("profnetwork.server.bind", "127.0.0.1");
+  public static final int DEFAULT_MAX_SESSIONS =
+    Integer.getInteger("profnetwork.server.maxSessions", 10000).intValue();
+  public static final int DEFAULT_IDLE_TIMEOUT_MS =
+    Integer.getInteger("profnetwork.server.idleTimeoutMs", 600000).intValue();
+  public static final boolean VIRTUAL_THREADS =
+    !"false".equalsIgnoreCase(System.getProperty("profnetwork.server.virtualThreads"));
+  public static final int PAGE_SIZE = Integer.getInteger("profnetwork.pageSize", 20).intValue();
+
+  // the commands, the names of their metrics (see Metrics)
+  private static final Set<String> COMMANDS = new HashSet<String>(Arrays.asList(
+    "LOGIN", "LOGOUT", "SEARCH", "REQUEST", "REQUESTS", "ACCEPT", "REJECT", "FRIENDS", "PROFILE",
+    "SEND", "MESSAGES", "DELETE", "HELP", "QUIT"));
+
+  // friends a user may have before requests are limited to the third level of connections
+  private static final int OPEN_REQUESTS = 5;
+  private static final int REQUEST_LEVELS = 3;
+
+  private final Database db;
+  private final int port;
+  private final boolean queueMessages;
+  private final Semaphore sessionPermits;
+  private final ExecutorService sessions;
+  private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+
+  private volatile ServerSocket listener = null;
+  private Thread acceptor = null;
+
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong refused = new AtomicLong();
+  private final AtomicLong requests = new AtomicLong();
+
+  /**
+  * @param db shared by all sessions
+  * @param port TCP port to listen on, 0 for any free port
+  * @param queueMessages send messages through the write-behind queue (see Database.queueMessage)
+  */
+  public Server(Database db, int port, boolean queueMessages)
+  {
+    this.db = db;
+    this.port = port;
+    this.queueMessages = queueMessages;
+    this.sessionPermits = new Semaphore(Math.max(1, DEFAULT_MAX_SESSIONS));
+    this.sessions = newSessionExecutor();
+  }
+
+  /**
+  * Opens the listening socket and starts accepting sessions
+  *
+  * @return the port listened on
+  * @throws java.io.IOException when the port cannot be opened
+  */
+  public synchronized int start() throws IOException
+  {
+    listener = new ServerSocket(port, 128, InetAddress.getByName(DEFAULT_BIND));
+    acceptor = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        accept();
+      }
+    }, "server-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    return listener.getLocalPort();
+  }
+
+  /*
+  * Stop accepting, close the open sessions and wait briefly for their threads
+  */
+  public synchronized void stop() throws InterruptedException
+  {
+    ServerSocket socket = listener;
+    if (socket == null)
+    {
+      return;
+    }
+    close(socket);
+    for (Socket session : open)
+    {
+      close(session);
+    }
+    sessions.shutdown();
+    sessions.awaitTermination(5, TimeUnit.SECONDS);
+    acceptor.join();
+  }
+
+  /*
+  * Return whether sessions run on virtual threads
+  */
+  public boolean usesVirtualThreads()
+  {
+    return !(sessions instanceof java.util.concurrent.ThreadPoolExecutor);
+  }
+
+  /*
+  * Return the session and request counters
+  */
+  public String getStats()
+  {
+    return "server: " + open.size() + " sessions open, " + accepted.get() + " accepted, "
+      + refused.get() + " refused, " + requests.get() + " requests"
+      + (usesVirtualThreads() ? " (virtual threads)" : " (platform threads)");
+  }
+
+  //==============sessions===============================================================================
+
+  private void accept()
+  {
+    while (true)
+    {
+      final Socket socket;
+      try
+      {
+        socket = listener.accept();
+      }
+      catch (IOException e)
+      {
+        return;   // closed by stop
+      }
+      if (!sessionPermits.tryAcquire())
+      {
+        refused.incrementAndGet();
+        reject(socket, "Too many sessions, try again later");
+        continue;
+      }
+      accepted.incrementAndGet();
+      open.add(socket);
+      try
+      {
+        sessions.execute(new Runnable()
+        {
+          public void run()
+          {
+            try
+            {
+              new Session(socket).run();
+            }
+            finally
+            {
+              open.remove(socket);
+              close(socket);
+              sessionPermits.release();
+            }
+          }
+        });
+      }
+      catch (RuntimeException e)
+      {
+        // the executor was shut down by stop
+        open.remove(socket);
+        close(socket);
+        sessionPermits.release();
+        return;
+      }
+    }//end while
+  }//end accept
+
+  /*
+  * The state of one connected user
+  */
+  private class Session
+  {
+    private final Socket socket;
+    private String username = null;
+    private String searchName = null;
+    private NameIndex.Page searchPage = null;
+
+    Session(Socket socket)
+    {
+      this.socket = socket;
+    }
+
+    void run()
+    {
+      try
+      {
+        socket.setSoTimeout(DEFAULT_IDLE_TIMEOUT_MS);
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        out.print("OK 1\nProfNetwork server, HELP lists the commands\n");
+        out.flush();
+
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+          line = line.trim();
+          if (line.isEmpty())
+          {
+            continue;
+          }
+          requests.incrementAndGet();
+          if (!handle(line, out))
+          {
+            break;
+          }
+          out.flush();
+        }//end while
+        out.flush();
+      }//end try
+      catch (SocketTimeoutException e)
+      {
+        // idle too long
+      }
+      catch (IOException e)
+      {
+        // the client went away or the server is stopping
+      }
+    }//end run
+
+    /*
+    * Answer one request; return false when the session ends
+    */
+    private boolean handle(String line, PrintWriter out)
+    {
+      // the command ends at the first tab or space
+      int space = 0;
+      while (space < line.length() && line.charAt(space) != '\t' && line.charAt(space) != ' ')
+      {
+        ++space;
+      }
+      String command = line.substring(0, space).toUpperCase();
+      String rest = line.substring(space).trim();
+      List<String[]> rows = new ArrayList<String[]>();
+      long start = Metrics.start();
+      Events.Operation event = new Events.Operation();
+      event.begin();
+      boolean failed = true;
+      try
+      {
+        if (command.equals("QUIT"))
+        {
+          reply(out, rows);
+          failed = false;
+          return false;
+        }
+        if (command.equals("HELP"))
+        {
+          rows.add(new String[] { "LOGIN user password, LOGOUT, SEARCH [name], REQUEST user, REQUESTS, "
+                                 +"ACCEPT user, REJECT user, FRIENDS [after], PROFILE user, SEND user text, "
+                                 +"MESSAGES [after], DELETE msgId, QUIT" });
+        }
+        else if (command.equals("LOGIN"))
+        {
+          String[] args = args(rest, 2);
+          if (!db.checkLogin(args[0], args[1]))
+          {
+            throw new IllegalArgumentException("Invalid credentials");
+          }
+          username = args[0];
+          searchName = null;
+          searchPage = null;
+        }
+        else if (command.equals("LOGOUT"))
+        {
+          username = null;
+        }
+        else if (username == null)
+        {
+          throw new IllegalArgumentException("LOGIN first");
+        }
+        else
+        {
+          execute(command, rest, rows);
+        }
+        reply(out, rows);
+        failed = false;
+      }//end try
+      catch (IllegalArgumentException e)
+      {
+        out.print("ERR " + e.getMessage() + "\n");
+      }
+      catch (SQLException e)
+      {
+        out.print("ERR " + e.getMessage() + "\n");
+      }
+      catch (RuntimeException e)
+      {
+        // a bug or a closed message queue fails the command, not the session
+        System.err.println("Command " + command + " failed: " + e);
+        out.print("ERR " + (e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()) + "\n");
+      }
+      catch (InterruptedException e)
+      {
+        out.print("ERR Interrupted\n");
+        return false;
+      }
+      finally
+      {
+        // unknown commands share one series, clients cannot add series
+        String operation = COMMANDS.contains(command) ? command : "UNKNOWN";
+        Metrics.stop(Metrics.OPERATION, operation, start, failed);
+        event.end();
+        if (event.shouldCommit())
+        {
+          event.name = operation;
+          event.user = username;
+          event.failed = failed;
+          event.commit();
+        }
+      }
+      return true;
+    }//end handle
+
+    /*
+    * Run a command of a logged in user, adding its result lines to rows
+    */
+    private void execute(String command, String rest, List<String[]> rows) throws SQLException, InterruptedException
+    {
+      if (command.equals("SEARCH"))
+      {
+        if (!rest.isEmpty())
+        {
+          searchName = rest;
+          searchPage = null;
+        }
+        else if (searchName == null)
+        {
+          throw new IllegalArgumentException("SEARCH needs a name");
+        }
+        searchPage = db.searchByName(searchName, searchPage, PAGE_SIZE);
+        for (int i = 0; i < searchPage.size(); i++)
+        {
+          rows.add(new String[] { searchPage.getUserId(i), searchPage.getName(i) });
+        }
+      }
+      else if (command.equals("REQUEST"))
+      {
+        String to = args(rest, 1)[0];
+        if (!db.isUser(to))
+        {
+          throw new IllegalArgumentException("User does not exist");
+        }
+        if (to.equals(username) || db.isConnected(username, to))
+        {
+          throw new IllegalArgumentException("Already connected with this user");
+        }
+        if (db.getFriendCount(username) >= OPEN_REQUESTS && !db.checkRange(username, to, REQUEST_LEVELS))
+        {
+          throw new IllegalArgumentException("User is not within third level of connections");
+        }
+        db.sendConnectionRequest(username, to);
+      }
+      else if (command.equals("REQUESTS"))
+      {
+        for (List<String> request : db.getConnectionRequests(username))
+        {
+          rows.add(new String[] { request.get(0).trim() });
+        }
+      }
+      else if (command.equals("ACCEPT") || command.equals("REJECT"))
+      {
+        db.respondToConnectionRequest(args(rest, 1)[0], username, command.equals("ACCEPT"));
+      }
+      else if (command.equals("FRIENDS"))
+      {
+        for (Member friend : db.getFriends(username, rest.isEmpty() ? null : rest, PAGE_SIZE))
+        {
+          rows.add(new String[] { friend.getUserId(), friend.getName() });
+        }
+      }
+      else if (command.equals("PROFILE"))
+      {
+        Profile profile = db.getUserProfile(args(rest, 1)[0]);
+        if (profile == null)
+        {
+          throw new IllegalArgumentException("User not found");
+        }
+        rows.add(new String[] { "user", profile.getUserId(), profile.getEmail(), profile.getName(), profile.getDateOfBirth() });
+        for (Profile.Work w : profile.getWork())
+        {
+          rows.add(new String[] { "work", w.getCompany(), w.getRole(), w.getLocation(), w.getStartDate(), w.getEndDate() });
+        }
+        for (Profile.Education e : profile.getEducation())
+        {
+          rows.add(new String[] { "education", e.getInstitution(), e.getMajor(), e.getDegree(), e.getStartDate(), e.getEndDate() });
+        }
+      }
+      else if (command.equals("SEND"))
+      {
+        String[] args = args(rest, 2);
+        if (!db.isUser(args[0]))
+        {
+          throw new IllegalArgumentException("Username does not exist");
+        }
+        String sendTime = LocalDateTime.now().format(Message.SEND_TIME);
+        if (queueMessages)
+        {
+          db.queueMessage(username, args[0], args[1], sendTime);
+        }
+        else
+        {
+          db.sendMessage(username, args[0], args[1], sendTime);
+        }
+      }
+      else if (command.equals("MESSAGES"))
+      {
+        int after = rest.isEmpty() ? -1 : number(rest);
+        for (Message m : db.getMessages(username, after, PAGE_SIZE))
+        {
+          rows.add(new String[] { String.valueOf(m.getMsgId()), m.getSendTime(), m.getSenderId(),
+                                  m.getReceiverId(), m.getStatus(), m.getContents().trim() });
+        }
+        if (after < 0)
+        {
+          db.markMessagesRead(username);
+        }
+      }
+      else if (command.equals("DELETE"))
+      {
+        db.deleteMessage(username, number(args(rest, 1)[0]));
+      }
+      else
+      {
+        throw new IllegalArgumentException("Unknown command " + command + ", try HELP");
+      }
+    }//end execute
+  }//end Session
+
+  //==============internals==============================================================================
+
+  /*
+  * Split the arguments of a request: at tabs, or at the first count-1 spaces
+  */
+  private static String[] args(String rest, int count)
+  {
+    String[] args = rest.indexOf('\t') >= 0 ? rest.split("\t", count) : rest.split(" +", count);
+    if (rest.isEmpty() || args.length < count)
+    {
+      throw new IllegalArgumentException("Expected " + count + " argument(s)");
+    }
+    return args;
+  }
+
+  private static int number(String s)
+  {
+    try
+    {
+      return Integer.parseInt(s.trim());
+    }
+    catch (NumberFormatException e)
+    {
+      throw new IllegalArgumentException("Not a number: " + s);
+    }
+  }
+
+  /*
+  * Write "OK n" and the rows, tabs and line breaks inside values replaced by spaces
+  */
+  private static void reply(PrintWriter out, List<String[]> rows)
+  {
+    StringBuilder reply = new StringBuilder("OK ").append(rows.size()).append('\n');
+    for (String[] row : rows)
+    {
+      for (int i = 0; i < row.length; i++)
+      {
+        if (i > 0)
+        {
+          reply.append('\t');
+        }
+        reply.append(row[i] == null ? "" : row[i].trim().replace('\t', ' ').replace('\n', ' ').replace('\r', ' '));
+      }
+      reply.append('\n');
+    }
+    out.print(reply);
+  }
+
+  private static void reject(Socket socket, String message)
+  {
+    try
+    {
+      socket.getOutputStream().write(("ERR " + message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+    catch (IOException e)
+    {
+      // the client is gone already
+    }
+    close(socket);
+  }
+
+  private static void close(java.io.Closeable closeable)
+  {
+    try
+    {
+      closeable.close();
+    }
+    catch (IOException e)
+    {
+      // nothing left to do
+    }
+  }
+
+  /*
+  * A virtual thread per session on Java 21 and later (looked up by
+  * reflection, the library is built for Java 11), otherwise a cached pool
+  * of daemon threads
+  */
+  private static ExecutorService newSessionExecutor()
+  {
+    if (VIRTUAL_THREADS)
+    {
+      try
+      {
+        Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (ExecutorService) factory.invoke(null);
+      }
+      catch (Exception e)
+      {
+        // before Java 21
+      }
+    }
+    final AtomicInteger count = new AtomicInteger();
+    return Executors.newCachedThreadPool(new ThreadFactory()
+    {
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "session-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+}//end Server
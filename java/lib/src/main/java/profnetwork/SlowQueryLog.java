@@ -0,0 +1,210 @@
+package profnetwork;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the statements of the Database helpers that take longer than a
+ * threshold to stderr, with their bound parameters, the rows they returned
+ * or changed and the elapsed time.  Statements whose parameters hold a
+ * password are marked with secret where they are defined; they are logged
+ * without their parameters and never explained.
+ *
+ * With an explain file, a sample of the slow statements is run again as
+ * EXPLAIN (ANALYZE, BUFFERS) on a background thread and the plan appended
+ * to the file, for a look at why they were slow.  Statements other than
+ * SELECT and WITH only get a plain EXPLAIN, ANALYZE would change data.  Each
+ * template is explained at most once per explainIntervalMs, and at most a
+ * few plans wait at a time; the others are skipped.
+ *
+ * Tuning (system properties):
+ *   profnetwork.slowQuery.thresholdMs        log statements slower than this (default off, 0 logs all)
+ *   profnetwork.slowQuery.explainFile        append plans of slow statements here (default none)
+ *   profnetwork.slowQuery.explainSample      share of slow statements explained (default 1.0)
+ *   profnetwork.slowQuery.explainIntervalMs  explain a template at most this often (default 60000)
+ */
+public final class SlowQueryLog
+{
+  public static final long THRESHOLD_MS = Long.getLong("profnetwork.slowQuery.thresholdMs", -1L).longValue();
+  public static final boolean ENABLED = THRESHOLD_MS >= 0;
+  public static final String EXPLAIN_FILE = System.getProperty("profnetwork.slowQuery.explainFile");
+  public static final double EXPLAIN_SAMPLE =
+    Double.parseDouble(System.getProperty("profnetwork.slowQuery.explainSample", "1.0"));
+  public static final long EXPLAIN_INTERVAL_MS = Long.getLong("profnetwork.slowQuery.explainIntervalMs", 60000L).longValue();
+
+  private static final long THRESHOLD_NANOS = THRESHOLD_MS * 1000000L;
+  private static final int EXPLAIN_BACKLOG = 8;
+
+  // templates marked with secret
+  private static final Set<String> secrets = ConcurrentHashMap.newKeySet();
+
+  // when each template was last explained, in System.nanoTime
+  private static final Map<String, Long> explained = new ConcurrentHashMap<String, Long>();
+
+  // explains run here, so the caller of the slow statement does not wait for them
+  private static final ThreadPoolExecutor explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+    new ArrayBlockingQueue<Runnable>(EXPLAIN_BACKLOG), new ThreadFactory()
+    {
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "slow-query-explain");
+        t.setDaemon(true);
+        return t;
+      }
+    }, new ThreadPoolExecutor.DiscardPolicy());
+
+  private SlowQueryLog()
+  {
+  }
+
+  /*
+  * Mark a statement template whose parameters hold a password; return the template
+  */
+  public static String secret(String sql)
+  {
+    secrets.add(sql);
+    return sql;
+  }
+
+  /**
+  * Logs a statement if it was slow, and queues its plan when sampled
+  *
+  * @param pool where the explain borrows its connection
+  * @param sql the statement template
+  * @param params the values bound to it
+  * @param rows rows returned or changed, -1 when it failed before knowing
+  * @param nanos elapsed time
+  * @param failed whether it ended with an error
+  */
+  public static void check(ConnectionPool pool, String sql, Object[] params, int rows, long nanos, boolean failed)
+  {
+    if (!ENABLED || nanos < THRESHOLD_NANOS)
+    {
+      return;
+    }
+    final String shown = redact(sql, params);
+    System.err.println(String.format("slow query %.3fms rows=%d%s: %s params=%s",
+      nanos / 1e6, rows, failed ? " failed" : "", oneLine(sql), shown));
+
+    if (EXPLAIN_FILE == null || pool == null || isSecret(sql)
+        || ThreadLocalRandom.current().nextDouble() >= EXPLAIN_SAMPLE)
+    {
+      return;
+    }
+    long now = System.nanoTime();
+    Long last = explained.get(sql);
+    if (last != null && now - last < EXPLAIN_INTERVAL_MS * 1000000L)
+    {
+      return;
+    }
+    explained.put(sql, now);
+    explain(pool, sql, params == null ? new Object[0] : params.clone(), shown, nanos);
+  }//end check
+
+  //==============internals==============================================================================
+
+  private static void explain(final ConnectionPool pool, final String sql, final Object[] params,
+                              final String shown, final long nanos)
+  {
+    explainer.execute(new Runnable()
+    {
+      public void run()
+      {
+        String head = sql.trim().toUpperCase();
+        boolean readOnly = head.startsWith("SELECT") || head.startsWith("WITH");
+        String explain = (readOnly ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + sql;
+        StringBuilder plan = new StringBuilder();
+        plan.append("-- ").append(LocalDateTime.now()).append(String.format(" %.3fms", nanos / 1e6))
+            .append(" params=").append(shown).append('\n')
+            .append(oneLine(sql)).append('\n');
+        try
+        {
+          ConnectionPool.Handle conn = pool.borrow();
+          try
+          {
+            // not through the statement cache, these are one-offs
+            PreparedStatement stmt = conn.getConnection().prepareStatement(explain);
+            try
+            {
+              Database.bind(stmt, params);
+              ResultSet rs = stmt.executeQuery();
+              while (rs.next())
+              {
+                plan.append(rs.getString(1)).append('\n');
+              }
+              rs.close();
+            }
+            finally
+            {
+              stmt.close();
+            }
+          }
+          finally
+          {
+            pool.release(conn);
+          }
+        }//end try
+        catch (SQLException e)
+        {
+          plan.append("-- EXPLAIN failed: ").append(e.getMessage()).append('\n');
+        }
+        write(plan.append('\n').toString());
+      }
+    });
+  }//end explain
+
+  private static synchronized void write(String plan)
+  {
+    try (PrintWriter out = new PrintWriter(new FileWriter(EXPLAIN_FILE, true)))
+    {
+      out.print(plan);
+    }
+    catch (IOException e)
+    {
+      System.err.println("Cannot write " + EXPLAIN_FILE + ": " + e.getMessage());
+    }
+  }
+
+  /*
+  * Return the parameters as text, hidden for a secret statement
+  */
+  private static String redact(String sql, Object[] params)
+  {
+    if (params == null || params.length == 0)
+    {
+      return "[]";
+    }
+    if (isSecret(sql))
+    {
+      return "[" + params.length + " hidden]";
+    }
+    return Arrays.toString(params);
+  }
+
+  /*
+  * Return if a statement was marked with secret; such statements are not explained either
+  */
+  private static boolean isSecret(String sql)
+  {
+    return secrets.contains(sql);
+  }
+
+  private static String oneLine(String sql)
+  {
+    return sql.replaceAll("\\s+", " ").trim();
+  }
+}//end SlowQueryLog
@@ -0,0 +1,157 @@
+package profnetwork;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-connection cache of PreparedStatements keyed by SQL template.  Keeping
+ * the statement open lets the driver prepare it on the server once and reuse
+ * the plan on every later execution with new bound parameters.  The least
+ * recently used statement is closed when the cache is full.
+ *
+ * Tuning (system properties):
+ *   profnetwork.statementCacheSize  statements kept per connection (default 64)
+ */
+public class StatementCache
+{
+  public static final int DEFAULT_SIZE =
+    Integer.getInteger("profnetwork.statementCacheSize", 64).intValue();
+
+  private final Connection _connection;
+  private final int maxSize;
+  private final LinkedHashMap<String, PreparedStatement> statements;
+
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  public StatementCache(Connection connection)
+  {
+    this(connection, DEFAULT_SIZE);
+  }
+
+  /**
+  * @param connection the connection the statements belong to
+  * @param maxSize number of statements kept open
+  */
+  public StatementCache(Connection connection, int maxSize)
+  {
+    this._connection = connection;
+    this.maxSize = Math.max(1, maxSize);
+    // access order, so iteration starts at the least recently used statement
+    this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+  }
+
+  /**
+  * Returns the cached statement for a SQL template, preparing it on a miss.
+  * Parameters left over from the previous use are cleared.
+  *
+  * @param sql the SQL template with ? placeholders
+  * @return an open PreparedStatement; do not close it
+  * @throws java.sql.SQLException when the statement cannot be prepared
+  */
+  public synchronized PreparedStatement prepare(String sql) throws SQLException
+  {
+    PreparedStatement stmt = statements.get(sql);
+    if (stmt != null)
+    {
+      ++hits;
+      stmt.clearParameters();
+      return stmt;
+    }
+
+    ++misses;
+    stmt = _connection.prepareStatement(sql);
+    useServerPrepare(stmt);
+    if (statements.size() >= maxSize)
+    {
+      Iterator<Map.Entry<String, PreparedStatement>> eldest = statements.entrySet().iterator();
+      closeQuietly(eldest.next().getValue());
+      eldest.remove();
+      ++evictions;
+    }
+    statements.put(sql, stmt);
+    return stmt;
+  }//end prepare
+
+  /*
+  * Close every cached statement
+  */
+  public synchronized void close()
+  {
+    for (PreparedStatement stmt : statements.values())
+    {
+      closeQuietly(stmt);
+    }
+    statements.clear();
+  }
+
+  public synchronized long getHits()
+  {
+    return hits;
+  }
+
+  public synchronized long getMisses()
+  {
+    return misses;
+  }
+
+  public synchronized long getEvictions()
+  {
+    return evictions;
+  }
+
+  public synchronized String getStats()
+  {
+    long total = hits + misses;
+    return String.format("statement cache: %d hits, %d misses (%.1f%% hit ratio), %d evictions, %d cached",
+      hits, misses, total == 0 ? 0.0 : 100.0 * hits / total, evictions, statements.size());
+  }
+
+  /*
+  * Ask the Postgres driver to use a named server-side statement from the first
+  * execution: setPrepareThreshold on current drivers, setUseServerPrepare on pg73jdbc3
+  */
+  private static void useServerPrepare(PreparedStatement stmt)
+  {
+    try
+    {
+      Class<?> pgStatement = Class.forName("org.postgresql.PGStatement");
+      if (!pgStatement.isInstance(stmt))
+      {
+        return;
+      }
+      try
+      {
+        Method threshold = pgStatement.getMethod("setPrepareThreshold", int.class);
+        threshold.invoke(stmt, 1);
+      }
+      catch (NoSuchMethodException e)
+      {
+        Method serverPrepare = pgStatement.getMethod("setUseServerPrepare", boolean.class);
+        serverPrepare.invoke(stmt, true);
+      }
+    }
+    catch (Exception e)
+    {
+      // not a Postgres statement, the driver plans it its own way.
+    }
+  }//end useServerPrepare
+
+  private static void closeQuietly(PreparedStatement stmt)
+  {
+    try
+    {
+      stmt.close();
+    }
+    catch (SQLException e)
+    {
+      // ignored.
+    }
+  }
+}//end StatementCache
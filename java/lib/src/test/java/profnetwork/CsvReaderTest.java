@@ -0,0 +1,109 @@
+package profnetwork;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CsvReaderTest
+{
+  private static List<String[]> read(String csv) throws IOException
+  {
+    List<String[]> rows = new ArrayList<String[]>();
+    try (CsvReader reader = new CsvReader(new StringReader(csv)))
+    {
+      while (reader.next())
+      {
+        rows.add(reader.getRow());
+      }
+    }
+    return rows;
+  }
+
+  @Test
+  void splitsPlainFields() throws IOException
+  {
+    List<String[]> rows = read("a,b,c\n1,,3\n");
+    assertEquals(2, rows.size());
+    assertArrayEquals(new String[] { "a", "b", "c" }, rows.get(0));
+    assertArrayEquals(new String[] { "1", "", "3" }, rows.get(1));
+  }
+
+  @Test
+  void unescapesQuotedFields() throws IOException
+  {
+    List<String[]> rows = read("\"Smith, John\",\"say \"\"hi\"\"\",\"two\nlines\"\n");
+    assertArrayEquals(new String[] { "Smith, John", "say \"hi\"", "two\nlines" }, rows.get(0));
+  }
+
+  @Test
+  void keepsQuotesInsideUnquotedFields() throws IOException
+  {
+    assertArrayEquals(new String[] { "5'11\"", "x" }, read("5'11\",x").get(0));
+  }
+
+  @Test
+  void acceptsCrLfAndLoneCr() throws IOException
+  {
+    List<String[]> rows = read("a,b\r\nc,d\re,f");
+    assertEquals(3, rows.size());
+    assertArrayEquals(new String[] { "c", "d" }, rows.get(1));
+    assertArrayEquals(new String[] { "e", "f" }, rows.get(2));
+  }
+
+  @Test
+  void skipsBlankLinesAndByteOrderMark() throws IOException
+  {
+    CsvReader reader = new CsvReader(new StringReader("\uFEFFid\n\n\nx\n"));
+    assertTrue(reader.next());
+    assertEquals("id", reader.getString(0));
+    assertTrue(reader.next());
+    assertEquals("x", reader.getString(0));
+    assertEquals(2, reader.getRecordNumber());
+    assertFalse(reader.next());
+  }
+
+  @Test
+  void keepsUnterminatedQuote() throws IOException
+  {
+    assertArrayEquals(new String[] { "a", "open, to the end" }, read("a,\"open, to the end").get(0));
+  }
+
+  @Test
+  void exposesFieldsAsViewsOfTheBuffer() throws IOException
+  {
+    CsvReader reader = new CsvReader(new StringReader("ab,\"c,d\"\n"));
+    assertTrue(reader.next());
+    assertEquals(2, reader.getFieldCount());
+    assertEquals("c,d", new String(reader.getBuffer(), reader.getFieldStart(1), reader.getFieldLength(1)));
+    assertThrows(IndexOutOfBoundsException.class, () -> reader.getString(2));
+  }
+
+  @Test
+  void growsPastTheInitialBuffers() throws IOException
+  {
+    StringBuilder csv = new StringBuilder();
+    StringBuilder longField = new StringBuilder();
+    for (int i = 0; i < 100000; i++)
+    {
+      longField.append((char) ('a' + i % 26));
+    }
+    csv.append(longField);
+    for (int i = 1; i < 40; i++)
+    {
+      csv.append(',').append(i);
+    }
+    String[] row = read(csv.toString()).get(0);
+    assertEquals(40, row.length);
+    assertEquals(longField.toString(), row[0]);
+    assertEquals("39", row[39]);
+  }
+}//end CsvReaderTest
@@ -0,0 +1,20 @@
+package profnetwork;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The parts of Database that need no connection
+ */
+class DatabaseTest
+{
+  @Test
+  void escapesNameSearchPatterns()
+  {
+    assertEquals("%ann%", Database.contains(" ann "));
+    assertEquals("%50\\%%", Database.contains("50%"));
+    assertEquals("%a\\_b%", Database.contains("a_b"));
+    assertEquals("%c:\\\\dir%", Database.contains("c:\\dir"));
+  }
+}//end DatabaseTest
@@ -0,0 +1,107 @@
+package profnetwork;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * FriendGraph and the bidirectional search of Reachability
+ */
+class FriendGraphTest
+{
+  /*
+  * Return a graph of the users u0 .. u(n-1) in a chain, each a friend of the next
+  */
+  private static FriendGraph chain(int n)
+  {
+    FriendGraph graph = new FriendGraph();
+    for (int i = 0; i < n; i++)
+    {
+      graph.addUser("u" + i, "User " + i);
+    }
+    for (int i = 1; i < n; i++)
+    {
+      graph.addFriendship("u" + (i - 1), "u" + i);
+    }
+    return graph;
+  }
+
+  @Test
+  void countsUsersAndFriendships()
+  {
+    FriendGraph graph = chain(4);
+    assertEquals(4, graph.getUserCount());
+    assertEquals(3, graph.getFriendshipCount());
+    assertEquals(2, graph.getFriendCount("u1"));
+    assertEquals(0, graph.getFriendCount("nobody"));
+    assertEquals("User 2", graph.getName(graph.indexOf("u2")));
+    assertEquals(-1, graph.indexOf("nobody"));
+  }
+
+  @Test
+  void friendshipsGoBothWaysOnce()
+  {
+    FriendGraph graph = chain(2);
+    assertFalse(graph.addFriendship("u1", "u0"));
+    assertFalse(graph.addFriendship("u0", "u0"));
+    assertEquals(1, graph.getFriendshipCount());
+    assertArrayEquals(new int[] { graph.indexOf("u0") }, graph.getFriends("u1"));
+    assertEquals(0, graph.getFriends("nobody").length);
+  }
+
+  @Test
+  void findsPathsWithinTheLevel()
+  {
+    FriendGraph graph = chain(6);
+    assertArrayEquals(new String[] { "u0", "u1", "u2", "u3" }, graph.findPath("u0", "u3", 3));
+    assertArrayEquals(new String[] { "u3", "u2", "u1", "u0" }, graph.findPath("u3", "u0", 3));
+    assertTrue(graph.isWithin("u0", "u3", 3));
+    assertFalse(graph.isWithin("u0", "u4", 3));
+    assertArrayEquals(new String[] { "u2" }, graph.findPath("u2", "u2", 0));
+    assertNull(graph.findPath("u0", "u1", -1));
+    assertNull(graph.findPath("u0", "nobody", 3));
+  }
+
+  @Test
+  void findsTheShortestPath()
+  {
+    FriendGraph graph = chain(6);
+    graph.addFriendship("u0", "u4");
+    assertArrayEquals(new String[] { "u0", "u4", "u5" }, graph.findPath("u0", "u5", 3));
+  }
+
+  @Test
+  void searchesAgainAfterAFailedSearch()
+  {
+    FriendGraph graph = chain(8);
+    assertNull(graph.findPath("u0", "u7", 3));
+    assertEquals(4, graph.findPath("u4", "u7", 3).length);
+  }
+
+  @Test
+  void keepsFriendshipsAcrossCompaction()
+  {
+    // enough friendships after the build to be folded into the CSR arrays
+    FriendGraph graph = new FriendGraph();
+    int n = 3000;
+    for (int i = 1; i < n; i++)
+    {
+      assertTrue(graph.addFriendship("hub", "f" + i));
+    }
+    graph.addFriendship("f1", "x");
+    assertEquals(n, graph.getFriendshipCount());
+    assertEquals(n - 1, graph.getFriendCount("hub"));
+    int[] friends = graph.getFriends("f1");
+    Arrays.sort(friends);
+    int[] expected = { graph.indexOf("hub"), graph.indexOf("x") };
+    Arrays.sort(expected);
+    assertArrayEquals(expected, friends);
+    assertArrayEquals(new String[] { "x", "f1", "hub", "f2999" }, graph.findPath("x", "f2999", 3));
+  }
+}//end FriendGraphTest
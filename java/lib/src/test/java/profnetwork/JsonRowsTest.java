@@ -0,0 +1,48 @@
+package profnetwork;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class JsonRowsTest
+{
+  @Test
+  void parsesRowsOfScalars()
+  {
+    List<String[]> rows = JsonRows.parse("[[\"Acme\", \"Engineer\", null, 3], [\"x\", true]]");
+    assertEquals(2, rows.size());
+    assertArrayEquals(new String[] { "Acme", "Engineer", null, "3" }, rows.get(0));
+    assertArrayEquals(new String[] { "x", "true" }, rows.get(1));
+  }
+
+  @Test
+  void treatsNullAndEmptyAsNoRows()
+  {
+    assertEquals(0, JsonRows.parse(null).size());
+    assertEquals(0, JsonRows.parse("  ").size());
+    assertEquals(0, JsonRows.parse("[]").size());
+    assertEquals(0, JsonRows.parse("[[]]").get(0).length);
+  }
+
+  @Test
+  void unescapesStrings()
+  {
+    String[] row = JsonRows.parse("[[\"a\\\"b\", \"\\\\\", \"line\\nnext\\ttab\", \"\\u00e9\\/\"]]").get(0);
+    assertArrayEquals(new String[] { "a\"b", "\\", "line\nnext\ttab", "\u00e9/" }, row);
+  }
+
+  @Test
+  void rejectsWhatTheProfileQueryDoesNotBuild()
+  {
+    assertThrows(IllegalArgumentException.class, () -> JsonRows.parse("[[{\"a\": 1}]]"));
+    assertThrows(IllegalArgumentException.class, () -> JsonRows.parse("[[[1]]]"));
+    assertThrows(IllegalArgumentException.class, () -> JsonRows.parse("[[\"open]]"));
+    assertThrows(IllegalArgumentException.class, () -> JsonRows.parse("[[1,]]"));
+    assertThrows(IllegalArgumentException.class, () -> JsonRows.parse("[[1]] x"));
+    assertThrows(IllegalArgumentException.class, () -> JsonRows.parse("[[\"\\u12\"]]"));
+  }
+}//end JsonRowsTest
@@ -0,0 +1,98 @@
+package profnetwork;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest
+{
+  @Test
+  void isEmptyAtFirst()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(99), 0);
+    assertEquals(0, histogram.getMean(), 0);
+  }
+
+  @Test
+  void keepsSmallValuesExactly()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++)
+    {
+      histogram.record(i);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(5050, histogram.getSum());
+    assertEquals(50.5, histogram.getMean(), 1e-9);
+    assertEquals(50, histogram.getValueAtPercentile(50));
+    assertEquals(99, histogram.getValueAtPercentile(99));
+    assertEquals(100, histogram.getValueAtPercentile(100));
+    assertEquals(100, histogram.getMax());
+  }
+
+  @Test
+  void keepsLargeValuesWithinOnePercent()
+  {
+    long[] values = { 1000, 123457, 9876543, 2000000000L, 1L << 50, Long.MAX_VALUE };
+    for (long value : values)
+    {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(value);
+      histogram.record(value / 2);   // max no longer caps the percentile below
+      long p = histogram.getValueAtPercentile(50);
+      assertTrue(p >= value / 2 && p <= value / 2 + value / 2 / 100, value + ": " + p);
+    }
+  }
+
+  @Test
+  void countsNegativeValuesAsZero()
+  {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    assertEquals(1, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+    assertEquals(0, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  void addsAnotherHistogram()
+  {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    a.record(10);
+    b.record(20);
+    b.record(1000000);
+    a.add(b);
+    assertEquals(3, a.getCount());
+    assertEquals(1000030, a.getSum());
+    assertEquals(1000000, a.getMax());
+    assertEquals(20, a.getValueAtPercentile(66));
+  }
+
+  @Test
+  void recordsFromManyThreads() throws InterruptedException
+  {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++)
+    {
+      threads[t] = new Thread(() ->
+      {
+        for (int i = 0; i < 10000; i++)
+        {
+          histogram.record(i);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads)
+    {
+      thread.join();
+    }
+    assertEquals(80000, histogram.getCount());
+    assertEquals(9999, histogram.getMax());
+  }
+}//end LatencyHistogramTest
@@ -0,0 +1,120 @@
+package profnetwork;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class NameIndexTest
+{
+  private static NameIndex index(String... names)
+  {
+    NameIndex index = new NameIndex();
+    for (int i = 0; i < names.length; i++)
+    {
+      index.addUser("u" + i, names[i]);
+    }
+    return index;
+  }
+
+  private static String[] userIds(NameIndex.Page page)
+  {
+    String[] ids = new String[page.size()];
+    for (int i = 0; i < ids.length; i++)
+    {
+      ids[i] = page.getUserId(i);
+    }
+    return ids;
+  }
+
+  @Test
+  void ranksExactThenPrefixThenWordThenSubstring()
+  {
+    NameIndex index = index("Annabel Lee", "Joanna Smith", "Ann", "Mary Ann Evans", "Anne");
+    NameIndex.Page page = index.search("ann", false, 0, 10);
+    assertArrayEquals(new String[] { "u2", "u4", "u0", "u3", "u1" }, userIds(page));
+    assertEquals(5, page.getTotal());
+    assertEquals("Ann", page.getName(0));
+  }
+
+  @Test
+  void ignoresCaseAndSurroundingSpace()
+  {
+    NameIndex index = index("  Grace HOPPER ");
+    assertEquals(1, index.search(" hopper", false, 0, 10).size());
+    assertEquals(1, index.search("GRACE HOPPER", false, 0, 10).size());
+  }
+
+  @Test
+  void prefixOnlyDropsPlainSubstrings()
+  {
+    NameIndex index = index("Annabel Lee", "Joanna Smith", "Mary Ann Evans");
+    assertArrayEquals(new String[] { "u0", "u2" }, userIds(index.search("ann", true, 0, 10)));
+  }
+
+  @Test
+  void matchesShortTermsWithoutTrigrams()
+  {
+    NameIndex index = index("Al", "Alan", "Sal", "Bob", null);
+    assertArrayEquals(new String[] { "u0", "u1", "u2" }, userIds(index.search("al", false, 0, 10)));
+  }
+
+  @Test
+  void needsEveryTrigramOfTheTerm()
+  {
+    NameIndex index = index("Robert", "Roberta", "Bert");
+    assertArrayEquals(new String[] { "u0", "u1" }, userIds(index.search("robe", false, 0, 10)));
+    assertEquals(0, index.search("roberto", false, 0, 10).size());
+  }
+
+  @Test
+  void pagesThroughTheRankedMatches()
+  {
+    String[] names = new String[25];
+    for (int i = 0; i < names.length; i++)
+    {
+      names[i] = "Lee " + (char) ('a' + i);
+    }
+    NameIndex index = index(names);
+    NameIndex.Page second = index.search("lee", false, 10, 10);
+    assertEquals(25, second.getTotal());
+    assertEquals(10, second.getOffset());
+    assertEquals("u10", second.getUserId(0));
+    NameIndex.Page last = index.search("lee", false, 20, 10);
+    assertEquals(5, last.size());
+    assertEquals(0, index.search("lee", false, 30, 10).size());
+  }
+
+  @Test
+  void cutsTheNextPageFromThePreviousOne()
+  {
+    String[] names = new String[25];
+    for (int i = 0; i < names.length; i++)
+    {
+      names[i] = "Lee " + (char) ('a' + i);
+    }
+    NameIndex index = index(names);
+    NameIndex.Page first = index.search("lee", false, (NameIndex.Page) null, 10);
+    NameIndex.Page second = index.search("lee", false, first, 10);
+    assertEquals(10, second.getOffset());
+    assertEquals("u10", second.getUserId(0));
+
+    // a new exact match ranks first, the next page is searched again and moves by one
+    index.addUser("new", "Lee");
+    NameIndex.Page third = index.search("lee", false, second, 10);
+    assertEquals(26, third.getTotal());
+    assertEquals(20, third.getOffset());
+    assertEquals("u19", third.getUserId(0));
+
+    // a page of another term is not reused
+    assertEquals(0, index.search("ann", false, third, 10).getTotal());
+  }
+
+  @Test
+  void takesLikeWildcardsLiterally()
+  {
+    NameIndex index = index("50% Off", "500 Off", "a_b", "axb");
+    assertArrayEquals(new String[] { "u0" }, userIds(index.search("50%", false, 0, 10)));
+    assertArrayEquals(new String[] { "u2" }, userIds(index.search("a_b", false, 0, 10)));
+  }
+}//end NameIndexTest
@@ -1,12 +1,15 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
-# Indicate the path of the java compiler to use
-export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
-export PATH=$JAVA_HOME/bin:$PATH
+# Use the JDK in JAVA_HOME (11 or later), or the one on the PATH; mvn honours it too
+if [ -n "$JAVA_HOME" ]; then
+  export PATH=$JAVA_HOME/bin:$PATH
+fi
 
-# compile the java program
-javac -d $DIR/../classes $DIR/../src/ProfNetwork.java
+# build the library and the java program; the JDBC driver (pgjdbc, see ../pom.xml)
+# and the library are copied to cli/target/lib
+mvn -B -q -f $DIR/../pom.xml package || exit 1
 
 #run the java program
 #Use your database name, port number and login
-java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar ProfNetwork $DB_NAME $PGPORT $USER
+java -cp "$DIR/../cli/target/classes:$DIR/../cli/target/lib/*" -Dprofnetwork.dataDir="$DIR/../../data" \
+  ProfNetwork $DB_NAME $PGPORT $USER
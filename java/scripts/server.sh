@@ -0,0 +1,16 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Use the JDK in JAVA_HOME (11 or later, 21 or later for virtual threads), or the one on the PATH
+if [ -n "$JAVA_HOME" ]; then
+  export PATH=$JAVA_HOME/bin:$PATH
+fi
+# usage: server.sh [port]   (default 7000); try it with: nc localhost 7000
+PORT=${1:-7000}
+
+# build the library and the java program, with the JDBC driver in cli/target/lib
+mvn -B -q -f $DIR/../pom.xml package || exit 1
+
+#serve the program on the port; more sessions need more pooled connections
+java -cp "$DIR/../cli/target/classes:$DIR/../cli/target/lib/*" -Dprofnetwork.dataDir="$DIR/../../data" \
+  -Dprofnetwork.server.port=$PORT -Dprofnetwork.pool.maxSize=${POOL_SIZE:-16} \
+  ProfNetwork $DB_NAME $PGPORT $USER
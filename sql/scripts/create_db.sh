@@ -1,5 +1,9 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 psql -p $PGPORT $DB_NAME < $DIR/../src/create_tables.sql
-psql -p $PGPORT $DB_NAME < $DIR/../src/create_indexes.sql
-psql -p $PGPORT $DB_NAME < $DIR/../src/load_data.sql
\ No newline at end of file
+psql -p $PGPORT $DB_NAME < $DIR/../src/message_partitions.sql
+psql -p $PGPORT $DB_NAME < $DIR/../src/message_deletes.sql
+psql -p $PGPORT $DB_NAME < $DIR/../src/create_index.sql
+psql -p $PGPORT $DB_NAME < $DIR/../src/load_data.sql
+# after loading, so the months already in the data get partitions too
+psql -p $PGPORT $DB_NAME < $DIR/../src/maintain_messages.sql
@@ -0,0 +1,28 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Compares the plans and latencies of the client's hot queries without and
+# with the indexes of create_index.sql.  Use a database set aside for
+# benchmarking, loaded with the bundled data through the client's import.
+# usage: index_bench.sh [scale]   e.g. 100 first multiplies the data 100 times
+SCALE=${1:-1}
+
+if [ "$SCALE" -gt 1 ]; then
+  psql -p $PGPORT $DB_NAME -v ON_ERROR_STOP=1 -v scale=$SCALE -f $DIR/../src/scale_data.sql || exit 1
+fi
+
+psql -p $PGPORT $DB_NAME -q -f $DIR/../src/drop_index.sql
+psql -p $PGPORT $DB_NAME -f $DIR/../src/index_bench.sql > $DIR/../index_bench_before.txt
+psql -p $PGPORT $DB_NAME -q -f $DIR/../src/create_index.sql
+psql -p $PGPORT $DB_NAME -f $DIR/../src/index_bench.sql > $DIR/../index_bench_after.txt
+
+# query label and execution time of each plan
+times()
+{
+  awk '/^== / { label = substr($0, 4) }
+       /Execution Time|Total runtime/ { match($0, /[0-9.]+ ms/); print label "\t" substr($0, RSTART, RLENGTH - 3) }' "$1"
+}
+
+echo "plans in $DIR/../index_bench_before.txt and $DIR/../index_bench_after.txt"
+printf "%-28s %14s %14s\n" "query" "no index (ms)" "indexed (ms)"
+paste <(times $DIR/../index_bench_before.txt) <(times $DIR/../index_bench_after.txt) \
+  | awk -F '\t' '{ printf "%-28s %14s %14s\n", $1, $2, $4 }'
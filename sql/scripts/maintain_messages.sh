@@ -0,0 +1,15 @@
+#!/bin/bash
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+# Creates the MESSAGE partitions of the coming months and, given a number of
+# months to keep, moves the older months to the message_archive schema.
+# Archived messages disappear from the users' inboxes.  Run it monthly,
+# e.g. from cron.
+# usage: maintain_messages.sh [keep_months|all] [ahead_months]   defaults all (archive nothing) and 3
+KEEP=${1:-all}
+AHEAD=${2:-3}
+
+if [ "$KEEP" = "all" ]; then
+  psql -p $PGPORT $DB_NAME -v ON_ERROR_STOP=1 -v ahead=$AHEAD -f $DIR/../src/maintain_messages.sql
+else
+  psql -p $PGPORT $DB_NAME -v ON_ERROR_STOP=1 -v keep=$KEEP -v ahead=$AHEAD -f $DIR/../src/maintain_messages.sql
+fi
@@ -0,0 +1,55 @@
+-- Indexes for the queries the ProfNetwork client runs most.  The primary
+-- keys already cover lookups by USR.userId, CONNECTION_USR.userId,
+-- WORK_EXPR.userId and EDUCATIONAL_DETAILS.userId.  Safe to run again:
+-- every index is dropped first.  sql/src/drop_index.sql removes them all.
+
+-- name search: USR.name ILIKE '%x%' cannot use a btree, a trigram index can
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+DROP INDEX IF EXISTS usr_name_trgm_idx;
+CREATE INDEX usr_name_trgm_idx ON USR USING gin (name gin_trgm_ops);
+
+
+-- friends of a user, both directions of an accepted connection
+-- (friend list, friend count, range check, loading the friend graph)
+DROP INDEX IF EXISTS connection_usr_accept_user_idx;
+CREATE INDEX connection_usr_accept_user_idx
+	ON CONNECTION_USR (userId, connectionId) WHERE status = 'ACCEPT';
+
+DROP INDEX IF EXISTS connection_usr_accept_connection_idx;
+CREATE INDEX connection_usr_accept_connection_idx
+	ON CONNECTION_USR (connectionId, userId) WHERE status = 'ACCEPT';
+
+-- pending requests sent to a user
+DROP INDEX IF EXISTS connection_usr_request_idx;
+CREATE INDEX connection_usr_request_idx
+	ON CONNECTION_USR (connectionId, userId) WHERE status = 'REQUEST';
+
+-- "already connected" check from the receiving side, any status
+-- (the primary key covers the sending side)
+DROP INDEX IF EXISTS connection_usr_connection_idx;
+CREATE INDEX connection_usr_connection_idx ON CONNECTION_USR (connectionId, userId);
+
+
+-- messages of a user: the inbox holds what the receiver has not deleted,
+-- the outbox what the sender has not deleted.  The predicates match the
+-- ones in the message queries, so the planner can use the partial indexes;
+-- they are ordered like the pages, newest sentAt first (Database.getMessages).
+-- MESSAGE is partitioned; each index is created on every partition, also on
+-- the ones message_add_partitions creates later.
+DROP INDEX IF EXISTS message_inbox_idx;
+CREATE INDEX message_inbox_idx
+	ON MESSAGE (receiverId, sentAt, msgId) WHERE deleteStatus = 0 OR deleteStatus = 1;
+
+DROP INDEX IF EXISTS message_outbox_idx;
+CREATE INDEX message_outbox_idx
+	ON MESSAGE (senderId, sentAt, msgId) WHERE deleteStatus = 0 OR deleteStatus = 2;
+
+-- marking a user's unread messages read
+DROP INDEX IF EXISTS message_unread_idx;
+CREATE INDEX message_unread_idx ON MESSAGE (receiverId) WHERE status = 'UNREAD';
+
+
+ANALYZE USR;
+ANALYZE CONNECTION_USR;
+ANALYZE MESSAGE;
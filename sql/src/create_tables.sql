@@ -1,6 +1,6 @@
 DROP TABLE WORK_EXPR;
 DROP TABLE EDUCATIONAL_DETAILS;
-DROP TABLE MESSAGE;
+DROP TABLE MESSAGE CASCADE;
 DROP TABLE CONNECTION_USR;
 DROP TABLE USR;
 
@@ -31,15 +31,32 @@ CREATE TABLE EDUCATIONAL_DETAILS(
 	enddate text,
 	PRIMARY KEY(userId,major,degree));
 
+-- Partitioned by month of sentAt, the sendTime as a timestamp (Postgres 11
+-- or later).  The primary key has to include the partition key, so Postgres
+-- does not keep msgId unique across partitions.  msgIds stay unique because
+-- only the msg sequence hands them out (IdAllocator, scale_data.sql; after
+-- the CSV import msg_id_blocks.sql moves the sequence past the imported
+-- ones), and each partition has a unique index on msgId.  The client reads
+-- sentAt with every message and filters on it when it updates one, so only
+-- that message's partition is touched.  The partitions are created and
+-- archived by message_partitions.sql.
 CREATE TABLE MESSAGE(
-	msgId integer UNIQUE NOT NULL, 
+	msgId integer NOT NULL, 
 	senderId text NOT NULL,
 	receiverId text NOT NULL,
 	contents text NOT NULL,
 	sendTime text,
 	deleteStatus integer,
 	status text NOT NULL,
-	PRIMARY KEY(msgId));
+	sentAt timestamp NOT NULL DEFAULT now(),
+	PRIMARY KEY(msgId, sentAt))
+	PARTITION BY RANGE (sentAt);
+
+-- rows outside the monthly partitions, e.g. messages without a readable sendTime
+CREATE TABLE MESSAGE_DEFAULT PARTITION OF MESSAGE DEFAULT;
+
+-- Postgres cannot keep msgId unique across partitions, so every partition has a unique index on it, message_add_partitions adds them
+CREATE UNIQUE INDEX message_default_msgid_key ON MESSAGE_DEFAULT (msgId);
 
 CREATE TABLE CONNECTION_USR(
 	userId text NOT NULL, 
@@ -47,7 +64,8 @@ CREATE TABLE CONNECTION_USR(
 	status text NOT NULL,
 	PRIMARY KEY(userId,connectionId));
 
-CREATE SEQUENCE msg START 1;
+-- msgIds: clients reserve a block of INCREMENT BY ids per nextval (IdAllocator)
+CREATE SEQUENCE msg START 1 INCREMENT BY 1000;
 
 INSERT INTO USR VALUES ('sultani','multani','hi@hi.com','Sultan Khan','1995/10/15');
 
@@ -0,0 +1,13 @@
+-- Removes the indexes of create_index.sql, e.g. to measure the queries without them
+DROP INDEX IF EXISTS usr_name_trgm_idx;
+DROP INDEX IF EXISTS connection_usr_accept_user_idx;
+DROP INDEX IF EXISTS connection_usr_accept_connection_idx;
+DROP INDEX IF EXISTS connection_usr_request_idx;
+DROP INDEX IF EXISTS connection_usr_connection_idx;
+DROP INDEX IF EXISTS message_inbox_idx;
+DROP INDEX IF EXISTS message_outbox_idx;
+DROP INDEX IF EXISTS message_unread_idx;
+
+ANALYZE USR;
+ANALYZE CONNECTION_USR;
+ANALYZE MESSAGE;
@@ -0,0 +1,67 @@
+-- EXPLAIN ANALYZE of the queries the client runs most, as it runs them.
+-- Used by sql/scripts/index_bench.sh before and after create_index.sql;
+-- each query is labelled with a line starting with '== '.
+\pset pager off
+
+-- the users the queries run for: one with friends, one with pending
+-- requests, one with messages, and a search term
+SELECT min(userId) AS me, max(connectionId) AS other FROM CONNECTION_USR WHERE status = 'ACCEPT' \gset
+SELECT min(connectionId) AS requested FROM CONNECTION_USR WHERE status = 'REQUEST' \gset
+SELECT max(receiverId) AS reader FROM MESSAGE \gset
+\set term 'son'
+
+\echo '== login'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT USR.userId FROM USR WHERE USR.userId = :'me' AND USR.password = 'x';
+
+\echo '== search name'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT userId, name FROM USR WHERE name ILIKE '%' || :'term' || '%';
+
+\echo '== friends list (first page)'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT U.userId, U.name
+FROM   USR U, CONNECTION_USR C
+WHERE  C.connectionId = :'me' AND C.status='ACCEPT' AND U.userId = C.userId AND U.userId != :'me'
+       AND U.userId > ''
+UNION
+SELECT U.userId, U.name
+FROM   USR U, CONNECTION_USR C
+WHERE  C.userId = :'me' AND C.status='ACCEPT' AND U.userId = C.connectionId AND U.userId != :'me'
+       AND U.userId > ''
+ORDER BY 1 LIMIT 21;
+
+\echo '== already connected'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM CONNECTION_USR C
+WHERE (C.userId = :'me' AND C.connectionId = :'other') OR (C.userId = :'other' AND C.connectionId = :'me');
+
+\echo '== range check (3 levels)'
+EXPLAIN (ANALYZE, BUFFERS)
+WITH RECURSIVE reach(userId, hops) AS (
+    SELECT CAST(:'me' AS text), 0
+  UNION
+    SELECT CASE WHEN C.userId = R.userId THEN C.connectionId ELSE C.userId END, R.hops + 1
+    FROM   reach R, CONNECTION_USR C
+    WHERE  R.hops < 3 AND C.status='ACCEPT'
+           AND (C.userId = R.userId OR C.connectionId = R.userId)
+)
+SELECT 1 FROM reach WHERE reach.userId = :'other' LIMIT 1;
+
+\echo '== friend requests'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT C.userId FROM CONNECTION_USR C WHERE C.status='REQUEST' AND C.connectionid = :'requested';
+
+\echo '== read messages (first page)'
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT * FROM MESSAGE M
+WHERE M.msgId > -1
+  AND ((M.senderId = :'reader' AND (M.deleteStatus=0 OR M.deleteStatus=2))
+    OR (M.receiverId = :'reader' AND (M.deleteStatus=0 OR M.deleteStatus=1)))
+ORDER BY M.msgId LIMIT 21;
+
+\echo '== mark messages read'
+BEGIN;
+EXPLAIN (ANALYZE, BUFFERS)
+UPDATE MESSAGE SET status='READ' WHERE MESSAGE.receiverId = :'reader' AND STATUS='UNREAD';
+ROLLBACK;
@@ -0,0 +1,18 @@
+-- Creates the MESSAGE partitions of the coming months and of the months of
+-- messages loaded into MESSAGE_DEFAULT, e.g. by load_data.sql, and, when asked to,
+-- archives the months older than the ones kept (see message_partitions.sql;
+-- archived messages are no longer shown to their users).  Pass the numbers
+-- of months with psql -v ahead=3 -v keep=12; ahead defaults to 3, without
+-- keep nothing is archived.
+\if :{?ahead}
+\else
+\set ahead 3
+\endif
+
+SELECT message_add_partitions(date_trunc('month', now())::date,
+                              (now() + (:'ahead' || ' months')::interval)::date) AS partitions_created;
+SELECT message_add_partitions(min(D.sentAt)::date, max(D.sentAt)::date) AS loaded_partitions_created
+FROM MESSAGE_DEFAULT D WHERE D.sentAt > '1970-01-01';
+\if :{?keep}
+SELECT message_archive((date_trunc('month', now()) - (:'keep' || ' months')::interval)::date) AS partitions_archived;
+\endif
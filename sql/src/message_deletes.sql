@@ -0,0 +1,42 @@
+-- Counts, per user, the messages that dropped out of their inbox or outbox:
+-- deleteStatus gained their flag or the row was deleted.  InboxCache compares
+-- the count with the one it saw at its last sync, so that a delete made in
+-- another session reloads the cached inbox without scanning it.  Safe to run
+-- again; run it after create_tables.sql or partition_message.sql, which
+-- (re)create MESSAGE.
+
+CREATE TABLE IF NOT EXISTS MESSAGE_DELETES(
+	userId text NOT NULL,
+	deletes bigint NOT NULL,
+	PRIMARY KEY(userId));
+
+CREATE OR REPLACE FUNCTION message_count_delete(who text) RETURNS void AS $$
+	INSERT INTO MESSAGE_DELETES VALUES (who, 1)
+	ON CONFLICT (userId) DO UPDATE SET deletes = MESSAGE_DELETES.deletes + 1;
+$$ LANGUAGE sql;
+
+CREATE OR REPLACE FUNCTION message_deletes() RETURNS trigger AS $$
+DECLARE
+	was integer := coalesce(OLD.deleteStatus, 0);
+	gone integer;
+BEGIN
+	IF TG_OP = 'UPDATE' THEN
+		gone := coalesce(NEW.deleteStatus, 0);
+	ELSE
+		gone := 3;
+	END IF;
+	IF (gone & 1) <> 0 AND (was & 1) = 0 THEN
+		PERFORM message_count_delete(OLD.senderId);
+	END IF;
+	IF (gone & 2) <> 0 AND (was & 2) = 0 THEN
+		PERFORM message_count_delete(OLD.receiverId);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- row triggers on a partitioned table need Postgres 11; moving rows between
+-- partitions (message_add_partitions) counts as deletes, which only costs a reload
+DROP TRIGGER IF EXISTS message_deletes ON MESSAGE;
+CREATE TRIGGER message_deletes AFTER UPDATE OF deleteStatus OR DELETE ON MESSAGE
+	FOR EACH ROW EXECUTE PROCEDURE message_deletes();
@@ -0,0 +1,70 @@
+-- Monthly partitions of MESSAGE (see create_tables.sql) and their archival.
+-- Safe to run again.  sql/scripts/maintain_messages.sh calls both functions.
+--
+--   message_add_partitions(first, last)  creates the partitions for the months
+--                                        from first to last that are missing,
+--                                        each with a unique index on msgId
+--   message_archive(before)              detaches the partitions of the months
+--                                        ending by before and moves them to the
+--                                        message_archive schema
+--
+-- Archiving takes messages away from their users: an archived month is no
+-- longer part of MESSAGE, so its messages drop out of every inbox and
+-- outbox and can no longer be deleted or marked read.  They stay readable
+-- as message_archive.message_YYYYMM; moving the table back to the public
+-- schema and attaching it to MESSAGE again restores them.  Nothing is
+-- archived unless maintain_messages is run with a number of months to keep.
+
+CREATE SCHEMA IF NOT EXISTS message_archive;
+
+CREATE OR REPLACE FUNCTION message_add_partitions(first date, last date) RETURNS integer AS $$
+DECLARE
+	month date := date_trunc('month', first);
+	part text;
+	created integer := 0;
+BEGIN
+	-- rows of a month kept in the default partition have to move into the new one
+	CREATE TEMP TABLE IF NOT EXISTS message_moving (LIKE MESSAGE);
+	WHILE month <= last LOOP
+		part := 'message_' || to_char(month, 'YYYYMM');
+		IF to_regclass(part) IS NULL THEN
+			TRUNCATE message_moving;
+			WITH moved AS (
+				DELETE FROM MESSAGE_DEFAULT D
+				WHERE D.sentAt >= month AND D.sentAt < month + interval '1 month'
+				RETURNING D.*)
+			INSERT INTO message_moving SELECT * FROM moved;
+
+			EXECUTE format('CREATE TABLE %I PARTITION OF MESSAGE FOR VALUES FROM (%L) TO (%L)',
+			               part, month, month + interval '1 month');
+			INSERT INTO MESSAGE SELECT * FROM message_moving;
+			created := created + 1;
+		END IF;
+		-- also on partitions created before the indexes were
+		EXECUTE format('CREATE UNIQUE INDEX IF NOT EXISTS %I ON %I (msgId)', part || '_msgid_key', part);
+		month := month + interval '1 month';
+	END LOOP;
+	RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION message_archive(before date) RETURNS integer AS $$
+DECLARE
+	part record;
+	archived integer := 0;
+BEGIN
+	FOR part IN
+		SELECT C.relname
+		FROM   pg_inherits I, pg_class C
+		WHERE  I.inhparent = 'message'::regclass AND C.oid = I.inhrelid
+		       AND C.relname ~ '^message_[0-9]{6}$'
+		       AND to_date(substr(C.relname, 9), 'YYYYMM') + interval '1 month' <= before
+		ORDER BY C.relname
+	LOOP
+		EXECUTE format('ALTER TABLE MESSAGE DETACH PARTITION %I', part.relname);
+		EXECUTE format('ALTER TABLE %I SET SCHEMA message_archive', part.relname);
+		archived := archived + 1;
+	END LOOP;
+	RETURN archived;
+END;
+$$ LANGUAGE plpgsql;
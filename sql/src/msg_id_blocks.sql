@@ -0,0 +1,8 @@
+-- Switches the msg sequence of an existing database to blocks of 1000 ids,
+-- as created by create_tables.sql.  Each nextval then reserves 1000 msgIds
+-- for the client that calls it (java/lib/src/main/java/profnetwork/IdAllocator.java).
+-- Moving to the next multiple of 1000 past the largest msgId keeps clients
+-- away from ids already used, whether they came from the sequence or the
+-- message import.
+SELECT setval('msg', GREATEST((SELECT max(msgId) FROM MESSAGE), 0) / 1000 * 1000 + 1000, false);
+ALTER SEQUENCE msg INCREMENT BY 1000;
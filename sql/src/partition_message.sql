@@ -0,0 +1,54 @@
+-- Moves the messages of a database created before MESSAGE was partitioned
+-- (msgId primary key, no sentAt column) to the layout of create_tables.sql.
+-- Run message_partitions.sql first and message_deletes.sql and
+-- create_index.sql afterwards, e.g.
+--   psql -f message_partitions.sql -f partition_message.sql -f message_deletes.sql -f create_index.sql
+-- The old table is kept as MESSAGE_FLAT; drop it once the new one is checked.
+
+BEGIN;
+
+ALTER TABLE MESSAGE RENAME TO MESSAGE_FLAT;
+
+CREATE TABLE MESSAGE(
+	msgId integer NOT NULL, 
+	senderId text NOT NULL,
+	receiverId text NOT NULL,
+	contents text NOT NULL,
+	sendTime text,
+	deleteStatus integer,
+	status text NOT NULL,
+	sentAt timestamp NOT NULL DEFAULT now(),
+	PRIMARY KEY(msgId, sentAt))
+	PARTITION BY RANGE (sentAt);
+
+CREATE TABLE MESSAGE_DEFAULT PARTITION OF MESSAGE DEFAULT;
+
+-- Postgres cannot keep msgId unique across partitions (see create_tables.sql);
+-- every partition has a unique index on it, message_add_partitions adds them
+CREATE UNIQUE INDEX message_default_msgid_key ON MESSAGE_DEFAULT (msgId);
+
+-- sendTime is text written as MM-DD-YYYY HH24:MI:SS; when it cannot be read
+-- the message gets the epoch and stays in the default partition
+CREATE FUNCTION pg_temp.sent_at(sendTime text) RETURNS timestamp AS $$
+BEGIN
+	RETURN to_timestamp(sendTime, 'MM-DD-YYYY HH24:MI:SS')::timestamp;
+EXCEPTION WHEN others THEN
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TEMP TABLE message_sent_at ON COMMIT DROP AS
+	SELECT F.msgId, F.senderId, F.receiverId, F.contents, F.sendTime, F.deleteStatus, F.status,
+	       coalesce(pg_temp.sent_at(F.sendTime), '1970-01-01') AS sentAt
+	FROM MESSAGE_FLAT F;
+
+-- one partition per month from the oldest message to three months ahead
+SELECT message_add_partitions(
+	coalesce((SELECT min(S.sentAt) FROM message_sent_at S WHERE S.sentAt > '1970-01-01'), now())::date,
+	(now() + interval '3 months')::date);
+
+INSERT INTO MESSAGE SELECT * FROM message_sent_at;
+
+COMMIT;
+
+ANALYZE MESSAGE;
@@ -0,0 +1,49 @@
+-- Multiplies the bundled data for benchmarking.  Run once on a database
+-- loaded with the bundled CSV files (through the client's import); pass the
+-- factor with psql -v scale=100.  Every USR, CONNECTION_USR, WORK_EXPR and
+-- EDUCATIONAL_DETAILS row gets scale-1 copies whose userIds end in '#<copy>',
+-- so each copy is a friendship network of its own.  No messages are bundled,
+-- so three are generated per accepted connection, with a mix of read and
+-- unread and of delete statuses.
+
+BEGIN;
+
+CREATE TEMP TABLE usr_base ON COMMIT DROP AS SELECT * FROM USR;
+INSERT INTO USR
+	SELECT B.userId || '#' || g, B.password, B.email, B.name, B.dateOfBirth
+	FROM usr_base B, generate_series(1, :scale - 1) g;
+
+CREATE TEMP TABLE connection_base ON COMMIT DROP AS SELECT * FROM CONNECTION_USR;
+INSERT INTO CONNECTION_USR
+	SELECT B.userId || '#' || g, B.connectionId || '#' || g, B.status
+	FROM connection_base B, generate_series(1, :scale - 1) g;
+
+CREATE TEMP TABLE work_base ON COMMIT DROP AS SELECT * FROM WORK_EXPR;
+INSERT INTO WORK_EXPR
+	SELECT B.userId || '#' || g, B.company, B.role, B.location, B.startDate, B.endDate
+	FROM work_base B, generate_series(1, :scale - 1) g;
+
+CREATE TEMP TABLE education_base ON COMMIT DROP AS SELECT * FROM EDUCATIONAL_DETAILS;
+INSERT INTO EDUCATIONAL_DETAILS
+	SELECT B.userId || '#' || g, B.instituitionName, B.major, B.degree, B.startdate, B.enddate
+	FROM education_base B, generate_series(1, :scale - 1) g;
+
+-- one id per message here: the clients reserve blocks of 1000 ids, see create_tables.sql
+ALTER SEQUENCE msg INCREMENT BY 1;
+INSERT INTO MESSAGE
+	SELECT nextval('msg'), C.userId, C.connectionId, 'Message ' || n || ' from ' || C.userId,
+	       to_char(now() - n * interval '1 day', 'MM-DD-YYYY HH24:MI:SS'),
+	       n % 4, CASE WHEN n = 3 THEN 'UNREAD' ELSE 'READ' END,
+	       date_trunc('second', now() - n * interval '1 day')
+	FROM CONNECTION_USR C, generate_series(1, 3) n
+	WHERE C.status = 'ACCEPT';
+ALTER SEQUENCE msg INCREMENT BY 1000;
+
+COMMIT;
+
+-- the generated messages go back up to three days, maybe into a month
+-- without a partition of its own yet
+SELECT message_add_partitions(min(D.sentAt)::date, max(D.sentAt)::date)
+FROM MESSAGE_DEFAULT D WHERE D.sentAt > '1970-01-01';
+
+ANALYZE;